@@ -0,0 +1,60 @@
+package cnpmnc.assignment.cache;
+
+import cnpmnc.assignment.util.constant.Answer;
+import lombok.Getter;
+
+import java.util.Map;
+
+// Compiled answer key of a test: question ids mapped to dense indices and the correct Answer ordinal per index
+@Getter
+public final class AnswerKey {
+
+    public static final byte BLANK = -1;
+
+    private final String testId;
+    private final long version;
+    // AnswerLayout that submissions graded against this key are packed by
+    private final String layoutId;
+    private final String[] questionIds;
+    private final Map<String, Integer> indexByQuestionId;
+    private final byte[] correct;
+
+    AnswerKey(String testId, long version, String layoutId, String[] questionIds, Map<String, Integer> indexByQuestionId, byte[] correct) {
+        this.testId = testId;
+        this.version = version;
+        this.layoutId = layoutId;
+        this.questionIds = questionIds;
+        this.indexByQuestionId = indexByQuestionId;
+        this.correct = correct;
+    }
+
+    public int size() {
+        return questionIds.length;
+    }
+
+    public int indexOf(String questionId) {
+        Integer index = indexByQuestionId.get(questionId);
+        return index != null ? index : -1;
+    }
+
+    public String questionId(int index) {
+        return questionIds[index];
+    }
+
+    public boolean isCorrect(int index, byte selected) {
+        return selected != BLANK && selected == correct[index];
+    }
+
+    // Answer names ("CHOICE_A" ...) to ordinals; anything else counts as blank
+    public static byte ordinalOf(String answer) {
+        if (answer == null) {
+            return BLANK;
+        }
+        for (Answer value : Answer.values()) {
+            if (value.name().equals(answer)) {
+                return (byte) value.ordinal();
+            }
+        }
+        return BLANK;
+    }
+}
@@ -0,0 +1,75 @@
+package cnpmnc.assignment.cache;
+
+import cnpmnc.assignment.repository.QuestionRepository;
+import cnpmnc.assignment.util.MetricsSource;
+import cnpmnc.assignment.util.SingleFlight;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+@RequiredArgsConstructor
+public class AnswerKeyCache implements MetricsSource {
+
+    private final QuestionRepository questionRepository;
+    private final AnswerLayoutStore answerLayoutStore;
+
+    private final Map<String, AnswerKey> keys = new ConcurrentHashMap<>();
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    private final SingleFlight<String, AnswerKey> loads = new SingleFlight<>();
+
+    public AnswerKey get(String testId) {
+        AnswerKey cached = keys.get(testId);
+        if (cached != null) {
+            return cached;
+        }
+        return loads.load(testId, () -> load(testId));
+    }
+
+    // Cached key only, never touches the database
+    public AnswerKey getIfPresent(String testId) {
+        return keys.get(testId);
+    }
+
+    public void invalidate(String testId) {
+        keys.compute(testId, (id, existing) -> {
+            versions.merge(id, 1L, Long::sum);
+            return null;
+        });
+    }
+
+    @Override
+    public String metricsName() {
+        return "answerKeys";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        return Map.of(
+                "size", keys.size(),
+                "loads", loads.stats()
+        );
+    }
+
+    private AnswerKey load(String testId) {
+        long version = versions.getOrDefault(testId, 0L);
+        List<QuestionRepository.AnswerView> rows = questionRepository.findAnswersByTestId(testId);
+        String[] questionIds = new String[rows.size()];
+        Map<String, Integer> indexByQuestionId = new HashMap<>(rows.size() * 2);
+        byte[] correct = new byte[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            QuestionRepository.AnswerView row = rows.get(i);
+            questionIds[i] = row.getId();
+            indexByQuestionId.put(row.getId(), i);
+            correct[i] = AnswerKey.ordinalOf(row.getAnswer());
+        }
+        String layoutId = answerLayoutStore.register(testId, questionIds);
+        AnswerKey key = new AnswerKey(testId, version, layoutId, questionIds, indexByQuestionId, correct);
+        keys.compute(testId, (id, existing) -> versions.getOrDefault(id, 0L) == version ? key : existing);
+        return key;
+    }
+}
@@ -0,0 +1,56 @@
+package cnpmnc.assignment.cache;
+
+import cnpmnc.assignment.repository.AnswerLayoutRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Layouts are immutable once written, so they are cached forever by id
+@Component
+@RequiredArgsConstructor
+public class AnswerLayoutStore {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO answer_layouts (id, test_id, question_ids, question_count, created_at) VALUES (?, ?, ?, ?, ?) " +
+                    "ON CONFLICT (id) DO NOTHING";
+
+    private final AnswerLayoutRepository answerLayoutRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    private final Map<String, String[]> questionIdsByLayout = new ConcurrentHashMap<>();
+
+    // Returns the layout id for this ordered question set, persisting it on first use. Callers resolve layouts
+    // before opening a transaction of their own, so the write below never holds a second pooled connection.
+    public String register(String testId, String[] questionIds) {
+        String joined = String.join(",", questionIds);
+        String layoutId = UUID.nameUUIDFromBytes((testId + "|" + joined).getBytes(StandardCharsets.UTF_8)).toString();
+        if (questionIdsByLayout.containsKey(layoutId)) {
+            return layoutId;
+        }
+        // Committed in its own transaction before it is cached: the caller's may be read-only or roll back,
+        // and a row written concurrently by someone else has identical content
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transaction.executeWithoutResult(status -> jdbcTemplate.update(INSERT_SQL,
+                layoutId, testId, joined, questionIds.length, Timestamp.valueOf(LocalDateTime.now())));
+        questionIdsByLayout.put(layoutId, questionIds.clone());
+        return layoutId;
+    }
+
+    public String[] questionIds(String layoutId) {
+        return questionIdsByLayout.computeIfAbsent(layoutId, id -> answerLayoutRepository.findById(id)
+                .map(layout -> layout.getQuestionIds().isEmpty() ? new String[0] : layout.getQuestionIds().split(","))
+                .orElseThrow(() -> new IllegalStateException("Answer layout not found: " + id)));
+    }
+}
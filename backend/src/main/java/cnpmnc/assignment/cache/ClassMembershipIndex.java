@@ -0,0 +1,112 @@
+package cnpmnc.assignment.cache;
+
+import cnpmnc.assignment.repository.ClassRepository;
+import cnpmnc.assignment.util.AfterCommit;
+import cnpmnc.assignment.util.MetricsSource;
+import cnpmnc.assignment.util.SingleFlight;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Per-class student membership as a bitset over dense user numbers.
+// Published bitsets are never mutated; every change swaps in a copy.
+@Component
+@RequiredArgsConstructor
+public class ClassMembershipIndex implements MetricsSource {
+
+    private final ClassRepository classRepository;
+
+    private final Map<String, Integer> userNumbers = new ConcurrentHashMap<>();
+    private final AtomicInteger nextUserNumber = new AtomicInteger();
+
+    private final Map<String, BitSet> membersByClass = new ConcurrentHashMap<>();
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    private final SingleFlight<String, BitSet> loads = new SingleFlight<>();
+
+    public boolean isMember(String classId, String userId) {
+        BitSet members = membersByClass.get(classId);
+        if (members == null) {
+            members = loads.load(classId, () -> load(classId));
+        }
+        Integer number = userNumbers.get(userId);
+        return number != null && members.get(number);
+    }
+
+    public int memberCount(String classId) {
+        BitSet members = membersByClass.get(classId);
+        if (members == null) {
+            members = loads.load(classId, () -> load(classId));
+        }
+        return members.cardinality();
+    }
+
+    public void warm(String classId) {
+        if (!membersByClass.containsKey(classId)) {
+            loads.load(classId, () -> load(classId));
+        }
+    }
+
+    public void addStudent(String classId, String userId) {
+        AfterCommit.run(() -> update(classId, userId, true));
+    }
+
+    public void removeStudent(String classId, String userId) {
+        AfterCommit.run(() -> update(classId, userId, false));
+    }
+
+    public void evict(String classId) {
+        AfterCommit.run(() -> membersByClass.compute(classId, (id, existing) -> {
+            versions.merge(id, 1L, Long::sum);
+            return null;
+        }));
+    }
+
+    @Override
+    public String metricsName() {
+        return "classMembership";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        return Map.of(
+                "loadedClasses", membersByClass.size(),
+                "knownUsers", userNumbers.size(),
+                "loads", loads.stats()
+        );
+    }
+
+    private BitSet load(String classId) {
+        long version = versions.getOrDefault(classId, 0L);
+        List<String> studentIds = classRepository.findStudentIdsByClassId(classId);
+        BitSet members = new BitSet();
+        for (String studentId : studentIds) {
+            members.set(numberOf(studentId));
+        }
+        // A membership change committed while loading may be missing from this read, so keep it local
+        membersByClass.compute(classId, (id, existing) ->
+                versions.getOrDefault(id, 0L) == version ? members : existing);
+        return members;
+    }
+
+    private void update(String classId, String userId, boolean member) {
+        int number = numberOf(userId);
+        membersByClass.compute(classId, (id, existing) -> {
+            versions.merge(id, 1L, Long::sum);
+            if (existing == null) {
+                return null;
+            }
+            BitSet copy = (BitSet) existing.clone();
+            copy.set(number, member);
+            return copy;
+        });
+    }
+
+    private int numberOf(String userId) {
+        return userNumbers.computeIfAbsent(userId, id -> nextUserNumber.getAndIncrement());
+    }
+}
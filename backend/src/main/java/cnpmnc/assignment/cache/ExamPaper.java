@@ -0,0 +1,29 @@
+package cnpmnc.assignment.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+// Immutable snapshot of what a student receives when opening a test.
+// The response bodies are serialized once and written to the client as-is.
+@Getter
+@AllArgsConstructor
+public final class ExamPaper {
+    private final String testId;
+    private final String classId;
+    private final String passcode;
+    private final String title;
+    private final long duration;
+    // Kept so submissions can be checked against the test window while the database is unreachable
+    private final LocalDateTime openTime;
+    private final LocalDateTime closeTime;
+    private final long version;
+    private final int questionCount;
+
+    // Serialized ApiResponse<List<QuestionDTOforStudent>> for /exams/{id}/questions
+    private final byte[] questionsBody;
+
+    // Serialized ApiResponse<ExamJoinResponseDTO> for /exams/join/{passcode}
+    private final byte[] joinBody;
+}
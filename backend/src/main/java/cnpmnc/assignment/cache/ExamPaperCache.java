@@ -0,0 +1,80 @@
+package cnpmnc.assignment.cache;
+
+import cnpmnc.assignment.dto.ApiResponse;
+import cnpmnc.assignment.dto.ExamJoinResponseDTO;
+import cnpmnc.assignment.dto.QuestionDTOforStudent;
+import cnpmnc.assignment.model.Test;
+import cnpmnc.assignment.util.MetricsSource;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+@RequiredArgsConstructor
+public class ExamPaperCache implements MetricsSource {
+
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, ExamPaper> papers = new ConcurrentHashMap<>();
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+
+    public ExamPaper get(String testId) {
+        return papers.get(testId);
+    }
+
+    // Version to pass to publish(); read it before loading from the database
+    public long currentVersion(String testId) {
+        return versions.getOrDefault(testId, 0L);
+    }
+
+    // Builds the snapshot and stores it unless the test was invalidated while it was being loaded
+    public ExamPaper publish(Test test, List<QuestionDTOforStudent> questions, long version) {
+        ExamPaper paper = new ExamPaper(
+                test.getId(),
+                test.getClazz().getId(),
+                test.getPasscode(),
+                test.getTitle(),
+                test.getDuration(),
+                test.getOpenTime(),
+                test.getCloseTime(),
+                version,
+                questions.size(),
+                serialize(ApiResponse.success(questions, "Test retrieved successfully")),
+                serialize(ApiResponse.success(
+                        new ExamJoinResponseDTO(test.getId(), test.getTitle(), test.getDuration(), questions),
+                        "Test joined successfully"))
+        );
+        papers.compute(test.getId(), (id, existing) -> currentVersion(id) == version ? paper : existing);
+        return paper;
+    }
+
+    public void invalidate(String testId) {
+        papers.compute(testId, (id, existing) -> {
+            versions.merge(id, 1L, Long::sum);
+            return null;
+        });
+    }
+
+    @Override
+    public String metricsName() {
+        return "examPapers";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        return Map.of("size", papers.size());
+    }
+
+    private byte[] serialize(Object body) {
+        try {
+            return objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize exam paper", e);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package cnpmnc.assignment.cache;
+
+import cnpmnc.assignment.util.AfterCommit;
+import cnpmnc.assignment.util.MetricsSource;
+import cnpmnc.assignment.util.RankTree;
+import cnpmnc.assignment.util.SingleFlight;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Completed submissions of each test in leaderboard order (highest score, then earliest submission), held in
+// an order-statistic tree so a page costs O(log n + page size) and a student's own rank O(log n), with no sort
+// per request. Loaded with one query on first read and updated after each grading commit; anything that
+// rewrites scores in bulk (replay, delete, a failed regrade) invalidates the test and it is reloaded.
+@Component
+@RequiredArgsConstructor
+public class LeaderboardCache implements MetricsSource {
+
+    private static final String LOAD_SQL =
+            "SELECT s.id, s.student_id, u.email, s.score, s.submitted_at " +
+                    "FROM submissions s JOIN users u ON u.id = s.student_id " +
+                    "WHERE s.test_id = ? AND s.status = 'COMPLETED'";
+
+    private static final Comparator<Standing> ORDER = Comparator
+            .comparingDouble(Standing::getScore).reversed()
+            .thenComparing(Standing::getSubmittedAt, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(Standing::getSubmissionId);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Map<String, Board> boards = new ConcurrentHashMap<>();
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    private final SingleFlight<String, Board> loads = new SingleFlight<>();
+    private final AtomicLong updates = new AtomicLong();
+
+    // One page and, if given, the student's own entry, read under the same lock so they agree
+    public View view(String testId, int offset, int limit, String studentId) {
+        return get(testId).view(offset, limit, studentId);
+    }
+
+    // A submission of the student was graded; it replaces the student's previous entry
+    public void record(String testId, String submissionId, String studentId, String email,
+                       double score, LocalDateTime submittedAt) {
+        Standing standing = new Standing(submissionId, studentId, email, score,
+                submittedAt != null ? submittedAt.truncatedTo(ChronoUnit.MICROS) : null);
+        AfterCommit.run(() -> {
+            Board board = boards.get(testId);
+            if (board == null) {
+                // Not loaded: a load racing with this commit must not publish
+                versions.merge(testId, 1L, Long::sum);
+                return;
+            }
+            board.put(standing);
+            updates.incrementAndGet();
+        });
+    }
+
+    // Regrade changed the score of the student's submission; submission time and position among equals are kept
+    public void rescore(String testId, String studentId, double score) {
+        AfterCommit.run(() -> {
+            Board board = boards.get(testId);
+            if (board == null) {
+                versions.merge(testId, 1L, Long::sum);
+                return;
+            }
+            board.rescore(studentId, score);
+            updates.incrementAndGet();
+        });
+    }
+
+    public void invalidate(String testId) {
+        AfterCommit.run(() -> boards.compute(testId, (id, existing) -> {
+            versions.merge(id, 1L, Long::sum);
+            return null;
+        }));
+    }
+
+    @Override
+    public String metricsName() {
+        return "leaderboards";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        return Map.of(
+                "loadedTests", boards.size(),
+                "updates", updates.get(),
+                "loads", loads.stats()
+        );
+    }
+
+    private Board get(String testId) {
+        Board board = boards.get(testId);
+        if (board == null) {
+            board = loads.load(testId, () -> load(testId));
+        }
+        return board;
+    }
+
+    private Board load(String testId) {
+        long version = versions.getOrDefault(testId, 0L);
+        Board board = new Board();
+        jdbcTemplate.query(LOAD_SQL, (RowCallbackHandler) rs -> board.put(new Standing(
+                rs.getString(1), rs.getString(2), rs.getString(3), rs.getDouble(4),
+                rs.getTimestamp(5) != null ? rs.getTimestamp(5).toLocalDateTime() : null)), testId);
+        // A submission graded while reading may be missing from the rows, so only publish if none was recorded meanwhile
+        boards.compute(testId, (id, existing) ->
+                existing == null && versions.getOrDefault(id, 0L) == version ? board : existing);
+        return board;
+    }
+
+    private static final class Board {
+        private final RankTree<Standing> tree = new RankTree<>(ORDER);
+        private final Map<String, Standing> byStudent = new HashMap<>();
+
+        private synchronized void put(Standing standing) {
+            Standing previous = byStudent.put(standing.studentId, standing);
+            if (previous != null) {
+                tree.remove(previous);
+            }
+            tree.add(standing);
+        }
+
+        private synchronized void rescore(String studentId, double score) {
+            Standing previous = byStudent.get(studentId);
+            if (previous != null && previous.score != score) {
+                put(new Standing(previous.submissionId, studentId, previous.email, score, previous.submittedAt));
+            }
+        }
+
+        private synchronized View view(int offset, int limit, String studentId) {
+            List<Standing> standings = tree.range(offset, limit);
+            List<Ranked> page = new ArrayList<>(standings.size());
+            for (int i = 0; i < standings.size(); i++) {
+                page.add(new Ranked(offset + i + 1, standings.get(i)));
+            }
+            Ranked own = null;
+            Standing standing = studentId != null ? byStudent.get(studentId) : null;
+            if (standing != null) {
+                own = new Ranked(tree.rank(standing) + 1, standing);
+            }
+            return new View(tree.size(), page, own);
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static final class Standing {
+        private final String submissionId;
+        private final String studentId;
+        private final String email;
+        private final double score;
+        private final LocalDateTime submittedAt;
+    }
+
+    // Rank is the 1-based position; equal scores are ordered by who submitted first
+    @Getter
+    @RequiredArgsConstructor
+    public static final class Ranked {
+        private final int rank;
+        private final Standing standing;
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static final class View {
+        private final int total;
+        private final List<Ranked> page;
+        private final Ranked own;
+    }
+}
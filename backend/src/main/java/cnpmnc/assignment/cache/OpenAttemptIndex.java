@@ -0,0 +1,116 @@
+package cnpmnc.assignment.cache;
+
+import cnpmnc.assignment.model.Test;
+import cnpmnc.assignment.util.AfterCommit;
+import cnpmnc.assignment.util.TimingWheel;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Every open exam attempt by test and student: its start, its deadline and the timer armed for it.
+// The deadline lets a submission be held to its attempt while the database is unreachable; the timer is cancelled
+// as soon as the attempt is graded, so a closing test only fires timers for attempts nobody submitted.
+// Filled when attempts start or are rebuilt on startup, refreshed when a teacher changes the test's timing.
+@Component
+public class OpenAttemptIndex {
+
+    private final Map<String, Map<String, OpenAttempt>> attemptsByTest = new ConcurrentHashMap<>();
+
+    public void put(String testId, String studentId, LocalDateTime startedAt, LocalDateTime deadline) {
+        attemptsByTest.computeIfAbsent(testId, id -> new ConcurrentHashMap<>())
+                .compute(studentId, (id, existing) -> {
+                    if (existing == null) {
+                        return new OpenAttempt(startedAt, deadline);
+                    }
+                    existing.deadline = deadline;
+                    return existing;
+                });
+    }
+
+    // Null when the student has no open attempt of the test
+    public LocalDateTime deadline(String testId, String studentId) {
+        OpenAttempt attempt = get(testId, studentId);
+        return attempt != null ? attempt.deadline : null;
+    }
+
+    // Claims the attempt's timer slot; the timeout is null when the attempt is due right away. False, with the timeout
+    // cancelled, when the attempt already has a timer or is no longer open
+    public boolean arm(String testId, String studentId, TimingWheel.Timeout<?> timeout) {
+        OpenAttempt attempt = get(testId, studentId);
+        synchronized (this) {
+            if (attempt == null || attempt.removed || attempt.armed) {
+                if (timeout != null) {
+                    timeout.cancel();
+                }
+                return false;
+            }
+            attempt.armed = true;
+            attempt.timeout = timeout;
+            return true;
+        }
+    }
+
+    // The attempt's timer fired; it may be armed again
+    public void disarm(String testId, String studentId) {
+        OpenAttempt attempt = get(testId, studentId);
+        if (attempt != null) {
+            synchronized (this) {
+                attempt.armed = false;
+                attempt.timeout = null;
+            }
+        }
+    }
+
+    // The attempt was graded: its timer is cancelled once that is committed
+    public void remove(String testId, String studentId) {
+        AfterCommit.run(() -> {
+            Map<String, OpenAttempt> attempts = attemptsByTest.get(testId);
+            OpenAttempt attempt = attempts != null ? attempts.remove(studentId) : null;
+            if (attempt == null) {
+                return;
+            }
+            synchronized (this) {
+                attempt.removed = true;
+                if (attempt.timeout != null) {
+                    attempt.timeout.cancel();
+                    attempt.timeout = null;
+                }
+            }
+        });
+    }
+
+    // The test's duration or close time changed; timers keep their time and re-check the test when they fire
+    public void refresh(Test test) {
+        AfterCommit.run(() -> {
+            Map<String, OpenAttempt> attempts = attemptsByTest.get(test.getId());
+            if (attempts != null) {
+                attempts.values().forEach(attempt -> attempt.deadline = test.attemptDeadline(attempt.startedAt));
+            }
+        });
+    }
+
+    public int size() {
+        return attemptsByTest.values().stream().mapToInt(Map::size).sum();
+    }
+
+    private OpenAttempt get(String testId, String studentId) {
+        Map<String, OpenAttempt> attempts = attemptsByTest.get(testId);
+        return attempts != null ? attempts.get(studentId) : null;
+    }
+
+    private static final class OpenAttempt {
+        private final LocalDateTime startedAt;
+        private volatile LocalDateTime deadline;
+        // Guarded by the index
+        private boolean armed;
+        private TimingWheel.Timeout<?> timeout;
+        private boolean removed;
+
+        private OpenAttempt(LocalDateTime startedAt, LocalDateTime deadline) {
+            this.startedAt = startedAt;
+            this.deadline = deadline;
+        }
+    }
+}
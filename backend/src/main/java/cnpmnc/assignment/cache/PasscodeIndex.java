@@ -0,0 +1,120 @@
+package cnpmnc.assignment.cache;
+
+import cnpmnc.assignment.repository.TestRepository;
+import cnpmnc.assignment.util.BloomFilter;
+import cnpmnc.assignment.util.MetricsSource;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// passcode -> testId for every test, fronted by a Bloom filter so unknown codes never reach the database.
+// Until the index has loaded every lookup falls back to the database; a failed load on startup is retried.
+@Component
+@RequiredArgsConstructor
+public class PasscodeIndex implements MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(PasscodeIndex.class);
+    private static final int MIN_CAPACITY = 1024;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    private final TestRepository testRepository;
+
+    private final Map<String, String> testIdByPasscode = new ConcurrentHashMap<>();
+    private volatile BloomFilter filter = new BloomFilter(MIN_CAPACITY, FALSE_POSITIVE_RATE);
+    private volatile int capacity = MIN_CAPACITY;
+    private volatile boolean loaded = false;
+    private volatile boolean loadPending = false;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        try {
+            for (TestRepository.PasscodeView view : testRepository.findAllPasscodes()) {
+                testIdByPasscode.put(view.getPasscode(), view.getId());
+            }
+        } catch (DataAccessException | TransactionException e) {
+            loadPending = true;
+            logger.warn("Could not load passcode index, retrying later: {}", e.getMessage());
+            return;
+        }
+        loadPending = false;
+        rebuild();
+        loaded = true;
+        logger.info("Passcode index loaded with {} tests", testIdByPasscode.size());
+    }
+
+    @Scheduled(fixedDelayString = "${startup.retry-interval-ms:30000}")
+    public void retryLoad() {
+        if (loadPending) {
+            load();
+        }
+    }
+
+    public String get(String passcode) {
+        String testId = testIdByPasscode.get(passcode);
+        if (testId != null) {
+            hits.incrementAndGet();
+        }
+        return testId;
+    }
+
+    // False only when the passcode certainly belongs to no test
+    public boolean mightExist(String passcode) {
+        if (!loaded || filter.mightContain(passcode)) {
+            fallbacks.incrementAndGet();
+            return true;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    public void put(String passcode, String testId) {
+        testIdByPasscode.put(passcode, testId);
+        if (testIdByPasscode.size() > capacity) {
+            rebuild();
+        } else {
+            filter.put(passcode);
+        }
+    }
+
+    // Bloom filters cannot forget, so the stale bit stays until the next rebuild
+    public void remove(String passcode) {
+        testIdByPasscode.remove(passcode);
+    }
+
+    @Override
+    public String metricsName() {
+        return "passcodeIndex";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        return Map.of(
+                "size", testIdByPasscode.size(),
+                "hits", hits.get(),
+                "rejected", rejected.get(),
+                "databaseFallbacks", fallbacks.get()
+        );
+    }
+
+    private synchronized void rebuild() {
+        int newCapacity = Math.max(MIN_CAPACITY, testIdByPasscode.size() * 2);
+        BloomFilter rebuilt = new BloomFilter(newCapacity, FALSE_POSITIVE_RATE);
+        testIdByPasscode.keySet().forEach(rebuilt::put);
+        filter = rebuilt;
+        capacity = newCapacity;
+    }
+}
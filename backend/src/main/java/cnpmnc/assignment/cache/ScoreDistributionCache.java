@@ -0,0 +1,159 @@
+package cnpmnc.assignment.cache;
+
+import cnpmnc.assignment.util.AfterCommit;
+import cnpmnc.assignment.util.MetricsSource;
+import cnpmnc.assignment.util.ScoreSketch;
+import cnpmnc.assignment.util.SingleFlight;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Score sketch per test, updated as submissions are graded and written back to score_distributions in the
+// background. A persisted sketch is trusted on load only if it counts as many scores as the test has completed
+// submissions; otherwise, and after a regrade, it is rebuilt from one scan of the test's scores.
+@Component
+@RequiredArgsConstructor
+public class ScoreDistributionCache implements MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScoreDistributionCache.class);
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO score_distributions (test_id, sketch, sample_count, updated_at) VALUES (?, ?, ?, ?) " +
+                    "ON CONFLICT (test_id) DO UPDATE SET sketch = EXCLUDED.sketch, " +
+                    "sample_count = EXCLUDED.sample_count, updated_at = EXCLUDED.updated_at";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TestStatsRegistry testStatsRegistry;
+
+    @Value("${results.sketch.resolution:200}")
+    private int resolution;
+
+    private final Map<String, Entry> sketches = new ConcurrentHashMap<>();
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    private final SingleFlight<String, Entry> loads = new SingleFlight<>();
+    private final AtomicLong rebuilds = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+
+    public ScoreSketch get(String testId) {
+        Entry entry = sketches.get(testId);
+        if (entry == null) {
+            entry = loads.load(testId, () -> load(testId));
+        }
+        return entry.sketch;
+    }
+
+    public void record(String testId, double score, double maxScore) {
+        AfterCommit.run(() -> {
+            Entry entry = sketches.get(testId);
+            if (entry == null) {
+                // Not loaded: a load racing with this commit must not publish
+                versions.merge(testId, 1L, Long::sum);
+                return;
+            }
+            entry.sketch.add(score, maxScore);
+            entry.dirty = true;
+        });
+    }
+
+    public void invalidate(String testId) {
+        AfterCommit.run(() -> {
+            synchronized (this) {
+                sketches.compute(testId, (id, existing) -> {
+                    versions.merge(id, 1L, Long::sum);
+                    return null;
+                });
+                jdbcTemplate.update("DELETE FROM score_distributions WHERE test_id = ?", testId);
+            }
+        });
+    }
+
+    // Synchronized with invalidate() so a sketch dropped meanwhile is not written back
+    @Scheduled(fixedDelayString = "${results.sketch.flush-interval-ms:10000}")
+    public synchronized void flush() {
+        List<Object[]> rows = new ArrayList<>();
+        List<Entry> flushed = new ArrayList<>();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (Map.Entry<String, Entry> mapping : sketches.entrySet()) {
+            Entry entry = mapping.getValue();
+            if (entry.dirty) {
+                entry.dirty = false;
+                rows.add(new Object[]{mapping.getKey(), entry.sketch.toBytes(), entry.sketch.count(), now});
+                flushed.add(entry);
+            }
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+            writes.addAndGet(rows.size());
+        } catch (RuntimeException e) {
+            flushed.forEach(entry -> entry.dirty = true);
+            logger.warn("Writing {} score sketches failed, retrying on the next run: {}", rows.size(), e.getMessage());
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "scoreDistributions";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        return Map.of(
+                "loadedTests", sketches.size(),
+                "rebuilds", rebuilds.get(),
+                "sketchesWritten", writes.get(),
+                "loads", loads.stats()
+        );
+    }
+
+    private Entry load(String testId) {
+        long version = versions.getOrDefault(testId, 0L);
+        long completed = testStatsRegistry.snapshot(testId).getCompleted();
+        List<byte[]> persisted = jdbcTemplate.query(
+                "SELECT sketch FROM score_distributions WHERE test_id = ?", (rs, rowNum) -> rs.getBytes(1), testId);
+
+        ScoreSketch sketch = persisted.isEmpty() ? null : ScoreSketch.fromBytes(persisted.get(0));
+        boolean rebuilt = false;
+        if (sketch == null || sketch.resolution() != resolution || sketch.count() != completed) {
+            ScoreSketch scanned = new ScoreSketch(resolution);
+            jdbcTemplate.query(
+                    "SELECT score, max_score FROM submissions WHERE test_id = ? AND status = 'COMPLETED'",
+                    (RowCallbackHandler) rs -> scanned.add(rs.getDouble(1), rs.getDouble(2)),
+                    testId);
+            sketch = scanned;
+            rebuilt = true;
+            rebuilds.incrementAndGet();
+        }
+
+        Entry entry = new Entry(sketch);
+        // Written back by the next flush
+        entry.dirty = rebuilt;
+        sketches.compute(testId, (id, existing) ->
+                existing == null && versions.getOrDefault(id, 0L) == version ? entry : existing);
+        return entry;
+    }
+
+    private static final class Entry {
+        private final ScoreSketch sketch;
+        private volatile boolean dirty;
+
+        private Entry(ScoreSketch sketch) {
+            this.sketch = sketch;
+        }
+    }
+}
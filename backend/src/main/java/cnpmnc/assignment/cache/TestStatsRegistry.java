@@ -0,0 +1,210 @@
+package cnpmnc.assignment.cache;
+
+import cnpmnc.assignment.util.AfterCommit;
+import cnpmnc.assignment.util.MetricsSource;
+import cnpmnc.assignment.util.SingleFlight;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+// Running score statistics per test, kept on striped adders so concurrent submissions never contend on a lock.
+// Updated after each grading commit and rebuilt from one grouped query on startup (retried while the database is
+// unreachable; tests read meanwhile are loaded one by one); anything that rewrites
+// scores in bulk (regrade, replay, delete) invalidates the test and it is reloaded on the next read.
+@Component
+@RequiredArgsConstructor
+public class TestStatsRegistry implements MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(TestStatsRegistry.class);
+
+    private static final String AGGREGATE_SQL =
+            "SELECT test_id, COUNT(*), " +
+                    "SUM(CASE WHEN status = 'COMPLETED' THEN 1 ELSE 0 END), " +
+                    "SUM(CASE WHEN status = 'COMPLETED' THEN score END), " +
+                    "SUM(CASE WHEN status = 'COMPLETED' THEN score * score END), " +
+                    "MIN(CASE WHEN status = 'COMPLETED' THEN score END), " +
+                    "MAX(CASE WHEN status = 'COMPLETED' THEN score END) " +
+                    "FROM submissions ";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Map<String, TestStats> statsByTest = new ConcurrentHashMap<>();
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    private final SingleFlight<String, TestStats> loads = new SingleFlight<>();
+    private volatile boolean rebuildPending;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        Map<String, Long> versionsBefore = new HashMap<>(versions);
+        long started = System.nanoTime();
+        List<TestStats> rebuilt;
+        try {
+            rebuilt = jdbcTemplate.query(AGGREGATE_SQL + "GROUP BY test_id", (rs, rowNum) -> read(rs));
+        } catch (DataAccessException e) {
+            rebuildPending = true;
+            logger.warn("Could not rebuild score statistics, retrying later: {}", e.getMessage());
+            return;
+        }
+        rebuildPending = false;
+        for (TestStats stats : rebuilt) {
+            long version = versionsBefore.getOrDefault(stats.testId, 0L);
+            publish(stats.testId, version, stats);
+        }
+        logger.info("Rebuilt score statistics of {} tests in {} ms", rebuilt.size(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    @Scheduled(fixedDelayString = "${startup.retry-interval-ms:30000}")
+    public void retryRebuild() {
+        if (rebuildPending) {
+            rebuild();
+        }
+    }
+
+    public Snapshot snapshot(String testId) {
+        return get(testId).snapshot();
+    }
+
+    // A row was inserted already graded
+    public void recordSubmission(String testId, double score) {
+        AfterCommit.run(() -> record(testId, true, true, score));
+    }
+
+    // A row was inserted that is graded later (queued submission or started attempt)
+    public void recordStarted(String testId) {
+        AfterCommit.run(() -> record(testId, true, false, 0));
+    }
+
+    // An existing row moved to COMPLETED
+    public void recordGraded(String testId, double score) {
+        AfterCommit.run(() -> record(testId, false, true, score));
+    }
+
+    public void invalidate(String testId) {
+        AfterCommit.run(() -> statsByTest.compute(testId, (id, existing) -> {
+            versions.merge(id, 1L, Long::sum);
+            return null;
+        }));
+    }
+
+    @Override
+    public String metricsName() {
+        return "testStatistics";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        return Map.of(
+                "loadedTests", statsByTest.size(),
+                "loads", loads.stats()
+        );
+    }
+
+    private TestStats get(String testId) {
+        TestStats stats = statsByTest.get(testId);
+        if (stats == null) {
+            stats = loads.load(testId, () -> load(testId));
+        }
+        return stats;
+    }
+
+    private TestStats load(String testId) {
+        long version = versions.getOrDefault(testId, 0L);
+        List<TestStats> rows = jdbcTemplate.query(AGGREGATE_SQL + "WHERE test_id = ? GROUP BY test_id",
+                (rs, rowNum) -> read(rs), testId);
+        TestStats stats = rows.isEmpty() ? new TestStats(testId) : rows.get(0);
+        publish(testId, version, stats);
+        return stats;
+    }
+
+    // A submission committed while reading may be missing from the rows, so only publish if none was recorded meanwhile
+    private void publish(String testId, long version, TestStats stats) {
+        statsByTest.compute(testId, (id, existing) ->
+                existing == null && versions.getOrDefault(id, 0L) == version ? stats : existing);
+    }
+
+    private void record(String testId, boolean inserted, boolean graded, double score) {
+        TestStats stats = statsByTest.get(testId);
+        if (stats == null) {
+            // Not loaded: a load racing with this commit must not publish
+            versions.merge(testId, 1L, Long::sum);
+            return;
+        }
+        if (inserted) {
+            stats.count.increment();
+        }
+        if (graded) {
+            stats.completed.increment();
+            stats.sum.add(score);
+            stats.sumOfSquares.add(score * score);
+            stats.min.accumulate(score);
+            stats.max.accumulate(score);
+        }
+    }
+
+    private static TestStats read(ResultSet rs) throws SQLException {
+        TestStats stats = new TestStats(rs.getString(1));
+        stats.count.add(rs.getLong(2));
+        long completed = rs.getLong(3);
+        stats.completed.add(completed);
+        if (completed > 0) {
+            stats.sum.add(rs.getDouble(4));
+            stats.sumOfSquares.add(rs.getDouble(5));
+            stats.min.accumulate(rs.getDouble(6));
+            stats.max.accumulate(rs.getDouble(7));
+        }
+        return stats;
+    }
+
+    private static final class TestStats {
+        private final String testId;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder completed = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+        private final DoubleAdder sumOfSquares = new DoubleAdder();
+        private final DoubleAccumulator min = new DoubleAccumulator(Math::min, Double.POSITIVE_INFINITY);
+        private final DoubleAccumulator max = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+
+        private TestStats(String testId) {
+            this.testId = testId;
+        }
+
+        // Each field is read separately, so a snapshot taken mid-update may be off by the submission in flight
+        private Snapshot snapshot() {
+            long graded = completed.sum();
+            if (graded == 0) {
+                return new Snapshot(count.sum(), 0, 0.0, 0.0, 0.0, 0.0);
+            }
+            double mean = sum.sum() / graded;
+            double variance = Math.max(0.0, sumOfSquares.sum() / graded - mean * mean);
+            return new Snapshot(count.sum(), graded, min.get(), max.get(), mean, Math.sqrt(variance));
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static final class Snapshot {
+        private final long total;
+        private final long completed;
+        private final double lowest;
+        private final double highest;
+        private final double average;
+        private final double standardDeviation;
+    }
+}
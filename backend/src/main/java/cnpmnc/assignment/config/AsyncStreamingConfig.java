@@ -0,0 +1,43 @@
+package cnpmnc.assignment.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+// StreamingResponseBody downloads (result exports, gradebooks) are written on an MVC async thread.
+// Without this they run on SimpleAsyncTaskExecutor, one unbounded thread per download, and are cut off by the
+// container's 30 s default async timeout however far the download has got. The pool is deliberately not a bean,
+// which would replace Spring Boot's application task executor.
+@Configuration
+public class AsyncStreamingConfig implements WebMvcConfigurer, DisposableBean {
+
+    @Value("${export.async.timeout-ms:600000}")
+    private long timeoutMs;
+
+    @Value("${export.async.threads:4}")
+    private int threads;
+
+    @Value("${export.async.queue-capacity:16}")
+    private int queueCapacity;
+
+    private final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("streaming-");
+        executor.initialize();
+        configurer.setDefaultTimeout(timeoutMs);
+        configurer.setTaskExecutor(executor);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,102 @@
+package cnpmnc.assignment.config;
+
+import cnpmnc.assignment.dto.ApiResponse;
+import cnpmnc.assignment.util.AdaptiveConcurrencyLimit;
+import cnpmnc.assignment.util.MetricsSource;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Map;
+
+// Sheds load on the submit and attempt-start endpoints with 503 + Retry-After instead of letting requests queue for
+// a database connection until connection-timeout. Only these write-heavy routes are limited: a limit shared with
+// the cheap routes beside them (autosave, status polling, joining) would learn its latency from the fast requests
+// and back off whenever a slow one came through.
+@Component
+public class ConcurrencyLimitFilter extends OncePerRequestFilter implements MetricsSource {
+
+    private final ObjectMapper objectMapper;
+    private final AdaptiveConcurrencyLimit submissionLimit;
+    private final AdaptiveConcurrencyLimit attemptLimit;
+    private final int retryAfterSeconds;
+
+    public ConcurrencyLimitFilter(ObjectMapper objectMapper,
+                                  @Value("${concurrency.limit.initial:20}") int initialLimit,
+                                  @Value("${concurrency.limit.min:2}") int minLimit,
+                                  @Value("${concurrency.limit.max:200}") int maxLimit,
+                                  @Value("${concurrency.limit.retry-after-seconds:1}") int retryAfterSeconds) {
+        this.objectMapper = objectMapper;
+        this.submissionLimit = new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit);
+        this.attemptLimit = new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return limitFor(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        AdaptiveConcurrencyLimit limit = limitFor(request);
+        if (!limit.tryAcquire()) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader("Retry-After", String.valueOf(retryAfterSeconds));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            objectMapper.writeValue(response.getOutputStream(), ApiResponse.error("Server is busy, please retry shortly"));
+            return;
+        }
+
+        long started = System.nanoTime();
+        boolean failed = true;
+        try {
+            filterChain.doFilter(request, response);
+            failed = response.getStatus() >= 500;
+        } finally {
+            int status = response.getStatus();
+            if (!failed && status >= 400 && status < 500) {
+                // Rejected before reaching the database; such fast replies would drag minRtt down
+                limit.releaseUnsampled();
+            } else {
+                limit.release(System.nanoTime() - started, failed);
+            }
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "concurrencyLimits";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        return Map.of(
+                "submissions", submissionLimit.stats(),
+                "attempts", attemptLimit.stats()
+        );
+    }
+
+    private AdaptiveConcurrencyLimit limitFor(HttpServletRequest request) {
+        if (!"POST".equals(request.getMethod())) {
+            return null;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.equals("/api/submissions") || path.equals("/api/submissions/")) {
+            return submissionLimit;
+        }
+        if (path.startsWith("/api/exams/") && path.endsWith("/attempts")) {
+            return attemptLimit;
+        }
+        return null;
+    }
+}
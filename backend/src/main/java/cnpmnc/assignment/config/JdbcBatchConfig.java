@@ -0,0 +1,39 @@
+package cnpmnc.assignment.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class JdbcBatchConfig {
+
+    public static final int BATCH_SIZE = 50;
+
+    // Group inserts/updates per table so a submission and its answers go out as JDBC batches
+    @Bean
+    public HibernatePropertiesCustomizer jdbcBatchingCustomizer(SqlStatementCounter sqlStatementCounter) {
+        return properties -> {
+            properties.put("hibernate.jdbc.batch_size", BATCH_SIZE);
+            properties.put("hibernate.order_inserts", true);
+            properties.put("hibernate.order_updates", true);
+            properties.put("hibernate.session_factory.statement_inspector", sqlStatementCounter);
+        };
+    }
+
+    // Lets the PostgreSQL driver send a batch of inserts as one multi-row INSERT
+    @Bean
+    public static BeanPostProcessor rewriteBatchedInsertsPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+                if (bean instanceof HikariDataSource dataSource) {
+                    dataSource.addDataSourceProperty("reWriteBatchedInserts", "true");
+                }
+                return bean;
+            }
+        };
+    }
+}
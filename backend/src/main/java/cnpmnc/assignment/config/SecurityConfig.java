@@ -1,5 +1,6 @@
 package cnpmnc.assignment.config;
 
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -33,6 +34,8 @@ public class SecurityConfig {
             .csrf(csrf -> csrf.disable())
             .addFilterBefore(sessionAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
             .authorizeHttpRequests(auth -> auth
+                // Completion of streamed responses; the request was authorized when it started
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                 // Public endpoints (including OpenAPI/Swagger)
                 .requestMatchers("/", "/login/**", "/oauth2/**", "/error").permitAll()
                 // Auth endpoints for manual OAuth2 flow
@@ -85,7 +88,9 @@ public class SecurityConfig {
             "Authorization", 
             "Content-Type", 
             "Set-Cookie",
-            "Access-Control-Allow-Credentials"
+            "Access-Control-Allow-Credentials",
+            "ETag",
+            "X-Next-Cursor"
         ));
         
         // Cache preflight response for 1 hour
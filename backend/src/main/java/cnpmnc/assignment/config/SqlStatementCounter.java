@@ -0,0 +1,21 @@
+package cnpmnc.assignment.config;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.stereotype.Component;
+
+// Counts statements Hibernate prepares on the current thread; a JDBC batch is prepared once
+@Component
+public class SqlStatementCounter implements StatementInspector {
+
+    private static final ThreadLocal<int[]> COUNT = ThreadLocal.withInitial(() -> new int[1]);
+
+    @Override
+    public String inspect(String sql) {
+        COUNT.get()[0]++;
+        return sql;
+    }
+
+    public int current() {
+        return COUNT.get()[0];
+    }
+}
@@ -5,9 +5,13 @@ import cnpmnc.assignment.dto.ApiResponse;
 import cnpmnc.assignment.dto.ClassDto;
 import cnpmnc.assignment.dto.StudentDto;
 import cnpmnc.assignment.dto.CreateClassRequestDTO;
+import cnpmnc.assignment.dto.GradebookDTO;
 import cnpmnc.assignment.dto.JoinClassRequest;
 import cnpmnc.assignment.model.User;
 import cnpmnc.assignment.service.ClassService;
+import cnpmnc.assignment.service.GradebookService;
+import cnpmnc.assignment.util.StreamingResponses;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
@@ -16,11 +20,15 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.servlet.http.HttpSession;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 @RestController
@@ -30,6 +38,8 @@ import java.util.List;
 public class ClassController {
     
     private final ClassService classService;
+    private final GradebookService gradebookService;
+    private final ObjectMapper objectMapper;
     
     @GetMapping("/{id}")
     @PreAuthorize("hasAnyAuthority('ADMIN', 'TEACHER')")
@@ -127,6 +137,59 @@ public class ClassController {
         }
     }
     
+    @GetMapping("/{id}/gradebook")
+    @PreAuthorize("hasAnyAuthority('ADMIN', 'TEACHER')")
+    @Operation(summary = "Get class gradebook", description = "Scores of every student of the class on every test, as a students x tests matrix")
+    @SecurityRequirement(name = "cookieAuth")
+    public ResponseEntity<ApiResponse<GradebookDTO>> getGradebook(
+            @Parameter(description = "Class ID") @PathVariable String id,
+            HttpSession session) {
+
+        User currentUser = (User) session.getAttribute("user");
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(ApiResponse.error("User not authenticated"));
+        }
+
+        try {
+            GradebookDTO gradebook = gradebookService.toDto(gradebookService.load(id, currentUser));
+            return ResponseEntity.ok(ApiResponse.success(gradebook, "Gradebook retrieved successfully"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(ApiResponse.error(e.getMessage()));
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                .body(ApiResponse.error(e.getMessage()));
+        }
+    }
+
+    @GetMapping("/{id}/gradebook/csv")
+    @PreAuthorize("hasAnyAuthority('ADMIN', 'TEACHER')")
+    @Operation(summary = "Download class gradebook", description = "The class gradebook as CSV, one line per student")
+    @SecurityRequirement(name = "cookieAuth")
+    public ResponseEntity<StreamingResponseBody> downloadGradebook(
+            @Parameter(description = "Class ID") @PathVariable String id,
+            HttpSession session) {
+
+        User currentUser = (User) session.getAttribute("user");
+        if (currentUser == null) {
+            return streamedError(HttpStatus.UNAUTHORIZED, "User not authenticated");
+        }
+
+        try {
+            GradebookService.Gradebook gradebook = gradebookService.load(id, currentUser);
+            StreamingResponseBody body = out -> gradebookService.writeCsv(gradebook, out);
+            return ResponseEntity.ok()
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"gradebook-" + id + ".csv\"")
+                .body(body);
+        } catch (IllegalArgumentException e) {
+            return streamedError(HttpStatus.NOT_FOUND, e.getMessage());
+        } catch (SecurityException e) {
+            return streamedError(HttpStatus.FORBIDDEN, e.getMessage());
+        }
+    }
+
     @GetMapping("/my-classes")
     @PreAuthorize("hasAnyAuthority('TEACHER', 'STUDENT')")
     @Operation(summary = "Get my classes", description = "Retrieve all classes - for teachers: classes they teach, for students: classes they enrolled in")
@@ -295,4 +358,10 @@ public class ClassController {
                 .body(ApiResponse.error(e.getMessage()));
         }
     }
+
+    private ResponseEntity<StreamingResponseBody> streamedError(HttpStatus status, String message) {
+        return ResponseEntity.status(status)
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(StreamingResponses.json(objectMapper, ApiResponse.error(message)));
+    }
 }
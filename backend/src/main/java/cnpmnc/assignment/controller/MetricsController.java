@@ -0,0 +1,39 @@
+package cnpmnc.assignment.controller;
+
+import cnpmnc.assignment.dto.ApiResponse;
+import cnpmnc.assignment.util.MetricsSource;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@RestController
+@RequestMapping("/api/admin/metrics")
+@RequiredArgsConstructor
+@Tag(name = "Metrics", description = "Runtime counters of the exam caches and loaders")
+public class MetricsController {
+
+    // Every component that exposes runtime counters
+    private final List<MetricsSource> sources;
+
+    @GetMapping
+    @PreAuthorize("hasAuthority('ADMIN')")
+    @Operation(summary = "Get runtime metrics", description = "Cache sizes, passcode index counters and coalesced load counts")
+    @SecurityRequirement(name = "cookieAuth")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getMetrics() {
+        Map<String, Object> metrics = new TreeMap<>();
+        for (MetricsSource source : sources) {
+            metrics.put(source.metricsName(), source.stats());
+        }
+        return ResponseEntity.ok(ApiResponse.success(metrics, "Metrics retrieved successfully"));
+    }
+}
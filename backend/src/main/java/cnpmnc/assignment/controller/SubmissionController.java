@@ -1,23 +1,33 @@
 package cnpmnc.assignment.controller;
 
-import cnpmnc.assignment.dto.ApiResponse;
 import cnpmnc.assignment.dto.AnswerDto;
+import cnpmnc.assignment.dto.ApiResponse;
 import cnpmnc.assignment.dto.SubmissionRequestDto;
-import cnpmnc.assignment.model.*;
-import cnpmnc.assignment.repository.*;
+import cnpmnc.assignment.model.Submission;
+import cnpmnc.assignment.model.User;
+import cnpmnc.assignment.service.AutosaveService;
+import cnpmnc.assignment.service.SubmissionGradingWorker;
+import cnpmnc.assignment.service.SubmissionService;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.servlet.http.HttpSession;
+import org.springframework.dao.DataAccessException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -27,139 +37,120 @@ import java.util.Map;
 @Tag(name = "Submissions", description = "Endpoints for submitting tests")
 public class SubmissionController {
 
-    private final QuestionRepository questionRepository;
-    private final SubmissionRepository submissionRepository;
-    private final TestRepository testRepository;
-    private final UserRepository userRepository;
-
-    public SubmissionController(QuestionRepository questionRepository,
-                                SubmissionRepository submissionRepository,
-                                TestRepository testRepository,
-                                UserRepository userRepository) {
-        this.questionRepository = questionRepository;
-        this.submissionRepository = submissionRepository;
-        this.testRepository = testRepository;
-        this.userRepository = userRepository;
+    private final SubmissionService submissionService;
+    private final SubmissionGradingWorker submissionGradingWorker;
+    private final AutosaveService autosaveService;
+
+    public SubmissionController(SubmissionService submissionService,
+                                SubmissionGradingWorker submissionGradingWorker,
+                                AutosaveService autosaveService) {
+        this.submissionService = submissionService;
+        this.submissionGradingWorker = submissionGradingWorker;
+        this.autosaveService = autosaveService;
     }
 
     @PostMapping
     @PreAuthorize("hasAnyAuthority('STUDENT')")
-    @Operation(summary = "Submit answers for a test", description = "Student submits exam answers")
+    @Operation(summary = "Submit answers for a test",
+               description = "Student submits exam answers. With async=true the submission is queued for grading and 202 Accepted is returned")
     @SecurityRequirement(name = "cookieAuth")
     public ResponseEntity<ApiResponse<Map<String, Object>>> submitTest(
             @RequestBody SubmissionRequestDto body,
+            @Parameter(description = "Queue the submission for background grading") @RequestParam(defaultValue = "false") boolean async,
+            @Parameter(description = "Client token; a retry with the same token returns the original submission")
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             HttpSession session) {
-        
+
         User currentUser = (User) session.getAttribute("user");
         if (currentUser == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(ApiResponse.error("User not authenticated"));
         }
 
-        String testId = body.getTestId();
-        String userId = body.getUserId();
-        List<AnswerDto> answers = body.getAnswers();
-
-        // Validate user ID matches current user
-        if (!currentUser.getId().equals(userId) && !currentUser.getEmail().equals(userId)) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN)
-                    .body(ApiResponse.error("You can only submit your own answers"));
+        if (idempotencyKey != null) {
+            body.setIdempotencyKey(idempotencyKey);
         }
 
-        // Find test
-        Test test = testRepository.findById(testId)
-                .orElseThrow(() -> new IllegalArgumentException("Test not found"));
-
-        // Find user by ID or email
-        User student = userRepository.findById(userId)
-                .orElse(userRepository.findByEmail(userId).orElse(null));
-        
-        if (student == null) {
+        try {
+            if (!async) {
+                Map<String, Object> response = submissionService.submit(body, currentUser);
+                return ResponseEntity.ok(ApiResponse.success(response, "Test submitted successfully"));
+            }
+            String submissionId = submissionService.enqueue(body, currentUser);
+            submissionGradingWorker.enqueue(submissionId);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("submissionId", submissionId);
+            response.put("status", Submission.SubmissionStatus.IN_PROGRESS.name());
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .body(ApiResponse.success(response, "Test submission accepted for grading"));
+        } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                    .body(ApiResponse.error("Student not found"));
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (DataAccessException | CannotCreateTransactionException | IllegalStateException e) {
+            // Database down and the submission could not be logged locally either
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", "5")
+                    .body(ApiResponse.error("Submissions are temporarily unavailable, please retry"));
         }
+    }
 
-        // Check if already submitted
-        if (submissionRepository.findByTestAndStudent(test, student).isPresent()) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                    .body(ApiResponse.error("You have already submitted this test"));
+    @PatchMapping("/{id}/answers")
+    @PreAuthorize("hasAnyAuthority('STUDENT')")
+    @Operation(summary = "Autosave answers of an attempt",
+               description = "Accepts only the changed answers of an IN_PROGRESS attempt (null submit_answer clears one). " +
+                       "Answers are buffered and written to the database in the background")
+    @SecurityRequirement(name = "cookieAuth")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> autosaveAnswers(
+            @Parameter(description = "Submission ID of the attempt") @PathVariable String id,
+            @RequestBody List<AnswerDto> answers,
+            HttpSession session) {
+
+        User currentUser = (User) session.getAttribute("user");
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(ApiResponse.error("User not authenticated"));
         }
 
-        // Fetch all questions for this test
-        List<Question> questions = questionRepository.findByTest_Id(testId);
-        
-        if (questions.isEmpty()) {
+        try {
+            Map<String, Object> response = autosaveService.save(id, answers, currentUser);
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .body(ApiResponse.success(response, "Answers saved"));
+        } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                    .body(ApiResponse.error("No questions found for this test"));
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(ApiResponse.error(e.getMessage()));
         }
+    }
 
-        // Map correct answers and submitted answers
-        Map<String, String> correctAnswers = new HashMap<>();
-        for (Question q : questions) {
-            correctAnswers.put(q.getId(), q.getAnswer());
-        }
+    @GetMapping("/{id}/status")
+    @PreAuthorize("hasAnyAuthority('STUDENT')")
+    @Operation(summary = "Get submission status", description = "IN_PROGRESS while queued for grading, COMPLETED with the score once graded")
+    @SecurityRequirement(name = "cookieAuth")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getSubmissionStatus(
+            @Parameter(description = "Submission ID") @PathVariable String id,
+            HttpSession session) {
 
-        Map<String, String> submittedAnswers = new HashMap<>();
-        if (answers != null) {
-            for (AnswerDto a : answers) {
-                if (a.getQuestionId() != null && a.getSubmitAnswer() != null) {
-                    submittedAnswers.put(a.getQuestionId(), a.getSubmitAnswer());
-                }
-            }
+        User currentUser = (User) session.getAttribute("user");
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(ApiResponse.error("User not authenticated"));
         }
 
-        // Create submission
-        Submission submission = new Submission();
-        submission.setTest(test);
-        submission.setStudent(student);
-        submission.setSubmittedAt(LocalDateTime.now());
-        submission.setStatus(Submission.SubmissionStatus.COMPLETED);
-
-        // Calculate score
-        int correctCount = 0;
-        int totalQuestions = questions.size();
-        double pointsPerQuestion = 10.0; // Default 10 points per question
-        double totalScore = 0.0;
-
-        for (Question question : questions) {
-            String questionId = question.getId();
-            String correctAnswer = correctAnswers.get(questionId);
-            String submittedAnswer = submittedAnswers.get(questionId);
-            
-            boolean isCorrect = submittedAnswer != null && submittedAnswer.equals(correctAnswer);
-            if (isCorrect) {
-                correctCount++;
-                totalScore += pointsPerQuestion;
-            }
-
-            // Create submission answer
-            SubmissionAnswer submissionAnswer = new SubmissionAnswer();
-            submissionAnswer.setSubmission(submission);
-            submissionAnswer.setQuestion(question);
-            submissionAnswer.setSelectedAnswer(submittedAnswer);
-            submissionAnswer.setCorrect(isCorrect);
-            submissionAnswer.setPointsEarned(isCorrect ? pointsPerQuestion : 0.0);
-            
-            submission.getAnswers().add(submissionAnswer);
+        try {
+            Map<String, Object> status = submissionService.getStatus(id, currentUser);
+            return ResponseEntity.ok(ApiResponse.success(status, "Submission status retrieved successfully"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(ApiResponse.error(e.getMessage()));
         }
-
-        double maxScore = totalQuestions * pointsPerQuestion;
-        submission.setScore(totalScore);
-        submission.setMaxScore(maxScore);
-
-        // Save submission (cascade will save answers)
-        Submission savedSubmission = submissionRepository.save(submission);
-
-        // Prepare response
-        Map<String, Object> response = new HashMap<>();
-        response.put("submissionId", savedSubmission.getId());
-        response.put("score", totalScore);
-        response.put("maxScore", maxScore);
-        response.put("percentage", (totalScore / maxScore) * 100);
-        response.put("correctCount", correctCount);
-        response.put("totalQuestions", totalQuestions);
-        response.put("status", "COMPLETED");
-
-        return ResponseEntity.ok(ApiResponse.success(response, "Test submitted successfully"));
     }
 }
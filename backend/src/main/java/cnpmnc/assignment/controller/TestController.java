@@ -1,17 +1,26 @@
 package cnpmnc.assignment.controller;
 
 
+import cnpmnc.assignment.cache.ClassMembershipIndex;
+import cnpmnc.assignment.cache.ExamPaper;
 import cnpmnc.assignment.dto.*;
 import cnpmnc.assignment.dto.RequestDTO.AddTestRequestDTO;
 import cnpmnc.assignment.dto.TestDTO;
+import cnpmnc.assignment.dto.DistractorAnalysisDTO;
+import cnpmnc.assignment.dto.ItemAnalysisDTO;
+import cnpmnc.assignment.dto.LeaderboardDTO;
+import cnpmnc.assignment.dto.ScoreDistributionDTO;
 import cnpmnc.assignment.dto.TestResultsResponseDTO;
+import cnpmnc.assignment.dto.TestResultsSummaryDTO;
 import cnpmnc.assignment.model.Class;
 import cnpmnc.assignment.model.Question;
-import cnpmnc.assignment.model.Test;
 import cnpmnc.assignment.model.User;
 import cnpmnc.assignment.repository.ClassRepository;
-import cnpmnc.assignment.repository.TestRepository;
+import cnpmnc.assignment.service.ExamAttemptService;
+import cnpmnc.assignment.service.ResultExportService;
 import cnpmnc.assignment.service.TestService;
+import cnpmnc.assignment.util.StreamingResponses;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
@@ -20,12 +29,17 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.servlet.http.HttpSession;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @RestController
@@ -34,8 +48,11 @@ import java.util.stream.Collectors;
 @Tag(name = "Test", description = "Test management endpoints")
 public class TestController {
     private final TestService testService;
-    private final TestRepository testRepository;
     private final ClassRepository classRepository;
+    private final ClassMembershipIndex classMembershipIndex;
+    private final ExamAttemptService examAttemptService;
+    private final ResultExportService resultExportService;
+    private final ObjectMapper objectMapper;
 
 
     @PostMapping("classes/{id}/tests")
@@ -196,7 +213,7 @@ public class TestController {
 
     @GetMapping("classes/{classId}/tests/{id}/results")
     @PreAuthorize("hasAnyAuthority('TEACHER')")
-    @Operation(summary = "Get test results", description = "Get all submissions and statistics for a test")
+    @Operation(summary = "Get test results", description = "Get a page of submissions (highest score first) and statistics for a test")
     @SecurityRequirement(name = "cookieAuth")
     @ApiResponses(value = {
             @io.swagger.v3.oas.annotations.responses.ApiResponse(responseCode = "200", description = "Test results retrieved successfully"),
@@ -206,6 +223,8 @@ public class TestController {
     public ResponseEntity<ApiResponse<TestResultsResponseDTO>> getTestResults(
             @Parameter(description = "Class ID") @PathVariable String classId,
             @Parameter(description = "Test ID") @PathVariable String id,
+            @Parameter(description = "Page number, 0-based") @RequestParam(defaultValue = "0") int page,
+            @Parameter(description = "Submissions per page, at most 500") @RequestParam(defaultValue = "100") int size,
             HttpSession session) {
 
         User currentUser = (User) session.getAttribute("user");
@@ -214,7 +233,7 @@ public class TestController {
                     .body(ApiResponse.error("User not authenticated"));
         }
         try {
-            TestResultsResponseDTO results = testService.getTestResults(classId, id, currentUser);
+            TestResultsResponseDTO results = testService.getTestResults(classId, id, page, size, currentUser);
             return ResponseEntity.ok(ApiResponse.success(results, "Test results retrieved successfully"));
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
@@ -225,6 +244,234 @@ public class TestController {
         }
     }
 
+    @GetMapping("classes/{classId}/tests/{id}/summary")
+    @PreAuthorize("hasAnyAuthority('TEACHER')")
+    @Operation(summary = "Get test summary", description = "Live score statistics of a test, served from memory without scanning submissions")
+    @SecurityRequirement(name = "cookieAuth")
+    public ResponseEntity<ApiResponse<TestResultsSummaryDTO>> getTestSummary(
+            @Parameter(description = "Class ID") @PathVariable String classId,
+            @Parameter(description = "Test ID") @PathVariable String id,
+            HttpSession session) {
+
+        User currentUser = (User) session.getAttribute("user");
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(ApiResponse.error("User not authenticated"));
+        }
+        try {
+            TestResultsSummaryDTO summary = testService.getTestSummary(classId, id, currentUser);
+            return ResponseEntity.ok(ApiResponse.success(summary, "Test summary retrieved successfully"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(ApiResponse.error(e.getMessage()));
+        }
+    }
+
+    @GetMapping("classes/{classId}/tests/{id}/item-analysis")
+    @PreAuthorize("hasAnyAuthority('TEACHER')")
+    @Operation(summary = "Get item analysis", description = "Difficulty (p-value), point-biserial and upper/lower discrimination of every question of a test")
+    @SecurityRequirement(name = "cookieAuth")
+    public ResponseEntity<ApiResponse<ItemAnalysisDTO>> getItemAnalysis(
+            @Parameter(description = "Class ID") @PathVariable String classId,
+            @Parameter(description = "Test ID") @PathVariable String id,
+            HttpSession session) {
+
+        User currentUser = (User) session.getAttribute("user");
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(ApiResponse.error("User not authenticated"));
+        }
+        try {
+            ItemAnalysisDTO analysis = testService.getItemAnalysis(classId, id, currentUser);
+            return ResponseEntity.ok(ApiResponse.success(analysis, "Item analysis retrieved successfully"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(ApiResponse.error(e.getMessage()));
+        }
+    }
+
+    @GetMapping("classes/{classId}/tests/{id}/distractors")
+    @PreAuthorize("hasAnyAuthority('TEACHER')")
+    @Operation(summary = "Get distractor analysis", description = "How many students chose each option of every question, overall and among the top and bottom scorers")
+    @SecurityRequirement(name = "cookieAuth")
+    public ResponseEntity<ApiResponse<DistractorAnalysisDTO>> getDistractorAnalysis(
+            @Parameter(description = "Class ID") @PathVariable String classId,
+            @Parameter(description = "Test ID") @PathVariable String id,
+            HttpSession session) {
+
+        User currentUser = (User) session.getAttribute("user");
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(ApiResponse.error("User not authenticated"));
+        }
+        try {
+            DistractorAnalysisDTO analysis = testService.getDistractorAnalysis(classId, id, currentUser);
+            return ResponseEntity.ok(ApiResponse.success(analysis, "Distractor analysis retrieved successfully"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(ApiResponse.error(e.getMessage()));
+        }
+    }
+
+    @GetMapping("classes/{classId}/tests/{id}/distribution")
+    @PreAuthorize("hasAnyAuthority('TEACHER')")
+    @Operation(summary = "Get score distribution", description = "Median, quartiles, requested percentiles and a score histogram of a test")
+    @SecurityRequirement(name = "cookieAuth")
+    public ResponseEntity<ApiResponse<ScoreDistributionDTO>> getScoreDistribution(
+            @Parameter(description = "Class ID") @PathVariable String classId,
+            @Parameter(description = "Test ID") @PathVariable String id,
+            @Parameter(description = "Percentiles between 0 and 100") @RequestParam(defaultValue = "10,25,50,75,90") List<Double> percentiles,
+            @Parameter(description = "Number of histogram buckets") @RequestParam(defaultValue = "10") int buckets,
+            HttpSession session) {
+
+        User currentUser = (User) session.getAttribute("user");
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(ApiResponse.error("User not authenticated"));
+        }
+        try {
+            ScoreDistributionDTO distribution = testService.getScoreDistribution(classId, id, percentiles, buckets, currentUser);
+            return ResponseEntity.ok(ApiResponse.success(distribution, "Score distribution retrieved successfully"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(ApiResponse.error(e.getMessage()));
+        }
+    }
+
+    @GetMapping("classes/{classId}/tests/{id}/leaderboard")
+    @PreAuthorize("hasAnyAuthority('TEACHER', 'STUDENT')")
+    @Operation(summary = "Get test leaderboard", description = "Page of completed submissions by score, earliest submission first among equals, for the class teacher. " +
+                       "Students only receive their own rank and the number of ranked submissions")
+    @SecurityRequirement(name = "cookieAuth")
+    public ResponseEntity<ApiResponse<LeaderboardDTO>> getLeaderboard(
+            @Parameter(description = "Class ID") @PathVariable String classId,
+            @Parameter(description = "Test ID") @PathVariable String id,
+            @Parameter(description = "Page number, from 0") @RequestParam(defaultValue = "0") int page,
+            @Parameter(description = "Page size, at most 100") @RequestParam(defaultValue = "10") int size,
+            HttpSession session) {
+
+        User currentUser = (User) session.getAttribute("user");
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(ApiResponse.error("User not authenticated"));
+        }
+        try {
+            LeaderboardDTO leaderboard = testService.getLeaderboard(classId, id, page, size, currentUser);
+            return ResponseEntity.ok(ApiResponse.success(leaderboard, "Leaderboard retrieved successfully"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(ApiResponse.error(e.getMessage()));
+        }
+    }
+
+    @GetMapping("classes/{classId}/tests/{id}/export")
+    @PreAuthorize("hasAnyAuthority('TEACHER')")
+    @Operation(summary = "Export test results", description = "Stream every submission of a test with its answer to each question, as CSV or NDJSON")
+    @SecurityRequirement(name = "cookieAuth")
+    public ResponseEntity<StreamingResponseBody> exportResults(
+            @Parameter(description = "Class ID") @PathVariable String classId,
+            @Parameter(description = "Test ID") @PathVariable String id,
+            @Parameter(description = "csv or ndjson") @RequestParam(defaultValue = "csv") String format,
+            HttpSession session) {
+
+        User currentUser = (User) session.getAttribute("user");
+        if (currentUser == null) {
+            return streamedError(HttpStatus.UNAUTHORIZED, "User not authenticated");
+        }
+        ResultExportService.Format exportFormat;
+        try {
+            exportFormat = ResultExportService.Format.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return streamedError(HttpStatus.BAD_REQUEST, "Format must be csv or ndjson");
+        }
+        try {
+            StreamingResponseBody body = resultExportService.export(classId, id, exportFormat, currentUser);
+            boolean csv = exportFormat == ResultExportService.Format.CSV;
+            return ResponseEntity.ok()
+                    .contentType(csv ? new MediaType("text", "csv", StandardCharsets.UTF_8) : MediaType.APPLICATION_NDJSON)
+                    .header(HttpHeaders.CONTENT_DISPOSITION,
+                            "attachment; filename=\"results-" + id + (csv ? ".csv" : ".ndjson") + "\"")
+                    .body(body);
+        } catch (IllegalArgumentException e) {
+            return streamedError(HttpStatus.NOT_FOUND, e.getMessage());
+        } catch (SecurityException e) {
+            return streamedError(HttpStatus.FORBIDDEN, e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", "30")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(StreamingResponses.json(objectMapper, ApiResponse.error(e.getMessage())));
+        }
+    }
+
+    @PostMapping("classes/{classId}/tests/{id}/regrade")
+    @PreAuthorize("hasAnyAuthority('TEACHER')")
+    @Operation(summary = "Regrade test", description = "Re-score all submissions of a test against its current answer key in the background")
+    @SecurityRequirement(name = "cookieAuth")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> regradeTest(
+            @Parameter(description = "Class ID") @PathVariable String classId,
+            @Parameter(description = "Test ID") @PathVariable String id,
+            HttpSession session) {
+
+        User currentUser = (User) session.getAttribute("user");
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(ApiResponse.error("User not authenticated"));
+        }
+        try {
+            Map<String, Object> status = testService.regrade(classId, id, currentUser);
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .body(ApiResponse.success(status, "Regrade scheduled"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(ApiResponse.error(e.getMessage()));
+        }
+    }
+
+    @GetMapping("classes/{classId}/tests/{id}/regrade")
+    @PreAuthorize("hasAnyAuthority('TEACHER')")
+    @Operation(summary = "Get regrade progress", description = "State and progress of the latest regrade of a test")
+    @SecurityRequirement(name = "cookieAuth")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getRegradeStatus(
+            @Parameter(description = "Class ID") @PathVariable String classId,
+            @Parameter(description = "Test ID") @PathVariable String id,
+            HttpSession session) {
+
+        User currentUser = (User) session.getAttribute("user");
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(ApiResponse.error("User not authenticated"));
+        }
+        try {
+            Map<String, Object> status = testService.getRegradeStatus(classId, id, currentUser);
+            return ResponseEntity.ok(ApiResponse.success(status, "Regrade status retrieved successfully"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(ApiResponse.error(e.getMessage()));
+        }
+    }
+
     @GetMapping("/classes/{classId}/test/{id}/questions")
     @PreAuthorize("hasAnyAuthority('TEACHER')")
     @Operation(summary = "Get question of test", description = "Retrieve list of all question of test")
@@ -260,7 +507,7 @@ public class TestController {
     @PreAuthorize("hasAnyAuthority('STUDENT')")
     @Operation(summary = "Get question of test For Student", description = "Retrieve list of all question of test")
     @SecurityRequirement(name = "cookieAuth")
-    public ResponseEntity<ApiResponse<List<QuestionDTOforStudent>>> takeATest(
+    public ResponseEntity<?> takeATest(
             @Parameter(description = "Test ID") @PathVariable String id,
             @Parameter(description = "passcode") @RequestParam String passcode,
             HttpSession session) {
@@ -270,24 +517,50 @@ public class TestController {
                     .body(ApiResponse.error("User not authenticated"));
         }
 
-        Test testEntity = testRepository.findById(id).orElseThrow(() -> new IllegalArgumentException("Test not found"));
-        if (!testEntity.getPasscode().equals(passcode)) {
+        ExamPaper paper = testService.getExamPaper(id);
+        if (!paper.getPasscode().equals(passcode)) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body(ApiResponse.error("Invalid passcode"));
         }
-        if (testEntity.getClazz().getStudents().stream().noneMatch(student -> student.getId().equals(currentUser.getId()))) {
+        if (!classMembershipIndex.isMember(paper.getClassId(), currentUser.getId())) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body(ApiResponse.error("You are not authorized to access this test"));
         }
-        List<QuestionDTOforStudent> dto = testService.getQuestionsForStudent(testEntity);
-        return ResponseEntity.ok(ApiResponse.success(dto, "Test retrieved successfully"));
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(paper.getQuestionsBody());
+    }
+
+    @PostMapping("/exams/{id}/attempts")
+    @PreAuthorize("hasAnyAuthority('STUDENT')")
+    @Operation(summary = "Start exam attempt",
+               description = "Starts the timed attempt (or resumes the running one); it is submitted automatically when its time runs out")
+    @SecurityRequirement(name = "cookieAuth")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> startAttempt(
+            @Parameter(description = "Test ID") @PathVariable String id,
+            HttpSession session) {
+        User currentUser = (User) session.getAttribute("user");
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(ApiResponse.error("User not authenticated"));
+        }
+        try {
+            Map<String, Object> attempt = examAttemptService.startAttempt(id, currentUser);
+            return ResponseEntity.ok(ApiResponse.success(attempt, "Attempt started"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(ApiResponse.error(e.getMessage()));
+        }
     }
 
     @GetMapping("/exams/join/{passcode}")
     @PreAuthorize("hasAnyAuthority('STUDENT')")
     @Operation(summary = "Join exam by passcode", description = "Student joins exam using passcode and gets questions")
     @SecurityRequirement(name = "cookieAuth")
-    public ResponseEntity<ApiResponse<ExamJoinResponseDTO>> joinExamByPasscode(
+    public ResponseEntity<?> joinExamByPasscode(
             @Parameter(description = "Passcode") @PathVariable String passcode,
             HttpSession session) {
         User currentUser = (User) session.getAttribute("user");
@@ -296,29 +569,20 @@ public class TestController {
                     .body(ApiResponse.error("User not authenticated"));
         }
 
-        // Find test by passcode
-        Test testEntity = testRepository.findByPasscode(passcode.toUpperCase())
-                .orElseThrow(() -> new IllegalArgumentException("Test not found with this passcode"));
+        // Resolve passcode through the in-memory index
+        String testId = testService.findTestIdByPasscode(passcode);
+        ExamPaper paper = testService.getExamPaper(testId);
 
         // Check if student is enrolled in the class
-        if (testEntity.getClazz().getStudents().stream()
-                .noneMatch(student -> student.getId().equals(currentUser.getId()))) {
+        if (!classMembershipIndex.isMember(paper.getClassId(), currentUser.getId())) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body(ApiResponse.error("You are not enrolled in the class for this test"));
         }
 
-        // Get questions for student
-        List<QuestionDTOforStudent> questions = testService.getQuestionsForStudent(testEntity);
-        
-        // Create response with testId and questions
-        ExamJoinResponseDTO response = new ExamJoinResponseDTO(
-                testEntity.getId(),
-                testEntity.getTitle(),
-                testEntity.getDuration(),
-                questions
-        );
-        
-        return ResponseEntity.ok(ApiResponse.success(response, "Test joined successfully"));
+        // Pre-serialized ExamJoinResponseDTO with testId and questions
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(paper.getJoinBody());
     }
 
     @GetMapping("student/tests")
@@ -342,8 +606,9 @@ public class TestController {
         return ResponseEntity.ok(ApiResponse.success(tests, "Test retrieved successfully"));
     }
 
-
+    private ResponseEntity<StreamingResponseBody> streamedError(HttpStatus status, String message) {
+        return ResponseEntity.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(StreamingResponses.json(objectMapper, ApiResponse.error(message)));
+    }
 }
-
-
-
@@ -1,128 +1,130 @@
 package cnpmnc.assignment.controller;
 
 import cnpmnc.assignment.dto.ApiResponse;
-import cnpmnc.assignment.dto.QuestionResultDto;
 import cnpmnc.assignment.dto.StudentGradeDTO;
 import cnpmnc.assignment.dto.SubmissionResponseDto;
-import cnpmnc.assignment.model.Choice;
-import cnpmnc.assignment.model.PersonalResult;
-import cnpmnc.assignment.model.Question;
-import cnpmnc.assignment.model.Submission;
 import cnpmnc.assignment.model.User;
-import cnpmnc.assignment.repository.ChoiceRepository;
-import cnpmnc.assignment.repository.PersonalResultRepository;
-import cnpmnc.assignment.repository.QuestionRepository;
-import cnpmnc.assignment.repository.SubmissionRepository;
+import cnpmnc.assignment.service.PersonalResultService;
+import cnpmnc.assignment.service.SubmissionService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.servlet.http.HttpSession;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/getresult")
 @Tag(name = "Personal Results", description = "Endpoints for viewing a user's personal result for a test")
 public class ViewPersonalResultController {
 
-    private final PersonalResultRepository personalResultRepository;
-    private final QuestionRepository questionRepository;
-    private final ChoiceRepository choiceRepository;
-    private final SubmissionRepository submissionRepository;
+    private final PersonalResultService personalResultService;
+    private final SubmissionService submissionService;
 
-    public ViewPersonalResultController(PersonalResultRepository personalResultRepository,
-                                        QuestionRepository questionRepository,
-                                        ChoiceRepository choiceRepository,
-                                        SubmissionRepository submissionRepository) {
-        this.personalResultRepository = personalResultRepository;
-        this.questionRepository = questionRepository;
-        this.choiceRepository = choiceRepository;
-        this.submissionRepository = submissionRepository;
+    public ViewPersonalResultController(PersonalResultService personalResultService,
+                                        SubmissionService submissionService) {
+        this.personalResultService = personalResultService;
+        this.submissionService = submissionService;
     }
 
     @GetMapping("/{id}")
-    @Operation(summary = "View personal result by test id",
-               description = "Return totalScore, correctCount, wrongCount from personal_result and list of questions with selected and correct answers")
+    @PreAuthorize("hasAnyAuthority('STUDENT')")
+    @Operation(summary = "View personal result by test id or submission id",
+               description = "Score summary of the current student's submission and the selected and correct answer of every question")
     @SecurityRequirement(name = "cookieAuth")
-    public ResponseEntity<ApiResponse<SubmissionResponseDto>> getPersonalResult(
-            @Parameter(description = "Test id / submission id") @PathVariable String id) {
-
-        // Fetch personal result (score summary)
-        PersonalResult pr = personalResultRepository.findByTestId(id).orElse(null);
-
-        Double totalScore = pr != null ? pr.getTotalScore() : null;
-        Integer correctCount = pr != null ? pr.getCorrectCount() : null;
-        Integer wrongCount = pr != null ? pr.getWrongCount() : null;
-
-        // Fetch questions for this test
-        List<Question> questions = questionRepository.findByTest_Id(id);
-
-        // Fetch choices (selected answers) for this test
-        List<Choice> choices = choiceRepository.findByTestId(id);
-
-        Map<String, String> selectedByQuestion = new HashMap<>();
-        for (Choice c : choices) {
-            if (c.getQuestionId() != null) {
-                selectedByQuestion.put(c.getQuestionId(), c.getSelectedAnswer());
-            }
+    public ResponseEntity<?> getPersonalResult(
+            @Parameter(description = "Test id / submission id") @PathVariable String id,
+            HttpSession session) {
+        User currentUser = (User) session.getAttribute("user");
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(ApiResponse.error("User not authenticated"));
         }
 
-        List<QuestionResultDto> questionResults = questions.stream()
-                .map(q -> new QuestionResultDto(
-                        q.getId(),
-                        q.getContent(),
-                        selectedByQuestion.get(q.getId()),
-                        q.getAnswer()
-                ))
-                .collect(Collectors.toList());
+        try {
+            // Serialized once per graded submission and served as-is until the test is regraded
+            byte[] body = personalResultService.get(id, currentUser.getId());
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(body);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.error(e.getMessage()));
+        }
+    }
 
-        SubmissionResponseDto resp = new SubmissionResponseDto(totalScore, correctCount, wrongCount, questionResults);
+    @GetMapping("/submission/{submissionId}")
+    @PreAuthorize("hasAnyAuthority('STUDENT')")
+    @Operation(summary = "View result of a submission",
+               description = "Score summary and the selected and correct answer of every question, expanded from the packed answers")
+    @SecurityRequirement(name = "cookieAuth")
+    public ResponseEntity<ApiResponse<SubmissionResponseDto>> getSubmissionResult(
+            @Parameter(description = "Submission ID") @PathVariable String submissionId,
+            HttpSession session) {
+        User currentUser = (User) session.getAttribute("user");
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(ApiResponse.error("User not authenticated"));
+        }
 
-        return ResponseEntity.ok(ApiResponse.success(resp, "Personal result retrieved"));
+        try {
+            SubmissionResponseDto resp = submissionService.getResult(submissionId, currentUser);
+            return ResponseEntity.ok(ApiResponse.success(resp, "Personal result retrieved"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(ApiResponse.error(e.getMessage()));
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(ApiResponse.error(e.getMessage()));
+        }
     }
 
     @GetMapping("/student/grades")
     @PreAuthorize("hasAnyAuthority('STUDENT')")
-    @Operation(summary = "Get student's all grades", description = "Get all test submissions and grades for the current student")
+    @Operation(summary = "Get student's grades",
+               description = "Test submissions and grades of the current student, newest first. The X-Next-Cursor header carries " +
+                       "the cursor of the next page; the ETag changes only when one of the student's submissions does")
     @SecurityRequirement(name = "cookieAuth")
-    public ResponseEntity<ApiResponse<List<StudentGradeDTO>>> getStudentGrades(HttpSession session) {
+    public ResponseEntity<ApiResponse<List<StudentGradeDTO>>> getStudentGrades(
+            @Parameter(description = "Only grades of this class") @RequestParam(required = false) String classId,
+            @Parameter(description = "X-Next-Cursor of the previous page") @RequestParam(required = false) String cursor,
+            @Parameter(description = "Page size, at most 200") @RequestParam(defaultValue = "50") int size,
+            HttpSession session,
+            WebRequest webRequest) {
         User currentUser = (User) session.getAttribute("user");
         if (currentUser == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(ApiResponse.error("User not authenticated"));
         }
 
-        // Use JOIN FETCH to avoid LazyInitializationException
-        List<Submission> submissions = submissionRepository.findByStudentIdWithTestAndClass(currentUser.getId());
-        
-        List<StudentGradeDTO> grades = submissions.stream()
-                .map(submission -> {
-                    StudentGradeDTO dto = new StudentGradeDTO();
-                    dto.setSubmissionId(submission.getId());
-                    dto.setTestId(submission.getTest().getId());
-                    dto.setTestName(submission.getTest().getTitle());
-                    dto.setClassId(submission.getTest().getClazz().getId());
-                    dto.setClassName(submission.getTest().getClazz().getName());
-                    dto.setScore(submission.getScore());
-                    dto.setMaxScore(submission.getMaxScore());
-                    dto.setPercentage((submission.getScore() / submission.getMaxScore()) * 100);
-                    dto.setSubmittedAt(submission.getSubmittedAt());
-                    dto.setStatus(submission.getStatus().name());
-                    return dto;
-                })
-                .collect(Collectors.toList());
-
-        return ResponseEntity.ok(ApiResponse.success(grades, "Grades retrieved successfully"));
+        try {
+            String eTag = submissionService.getGradesETag(currentUser.getId());
+            if (webRequest.checkNotModified(eTag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+            }
+            List<StudentGradeDTO> grades = submissionService.getGrades(currentUser.getId(), classId, cursor, size);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                    .eTag(eTag)
+                    .cacheControl(CacheControl.noCache().cachePrivate());
+            if (grades.size() == size) {
+                response.header("X-Next-Cursor", SubmissionService.gradeCursor(grades.get(grades.size() - 1)));
+            }
+            return response.body(ApiResponse.success(grades, "Grades retrieved successfully"));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(ApiResponse.error(e.getMessage()));
+        }
     }
 }
@@ -0,0 +1,47 @@
+package cnpmnc.assignment.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class DistractorAnalysisDTO {
+    private String testId;
+    // Completed submissions analysed
+    private long submissions;
+    // Submissions in each of the top and bottom scorer groups (27% each)
+    private long groupSize;
+    private LocalDateTime computedAt;
+    private List<Question> questions;
+
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Question {
+        private String questionId;
+        // Position in the test, 1-based
+        private int number;
+        private String correctAnswer;
+        private List<Option> options;
+    }
+
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Option {
+        // Answer name, or BLANK
+        private String answer;
+        private int total;
+        private int topScorers;
+        private int bottomScorers;
+    }
+}
@@ -0,0 +1,41 @@
+package cnpmnc.assignment.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class GradebookDTO {
+    private String classId;
+    // Column order of Row.scores
+    private List<TestColumn> tests;
+    private List<Row> students;
+
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class TestColumn {
+        private String testId;
+        private String title;
+        private double maxScore;
+    }
+
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Row {
+        private String studentId;
+        private String email;
+        private String studentCode;
+        // One score per test, null when not submitted or not graded yet
+        private List<Double> scores;
+    }
+}
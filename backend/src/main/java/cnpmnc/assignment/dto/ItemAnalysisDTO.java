@@ -0,0 +1,39 @@
+package cnpmnc.assignment.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ItemAnalysisDTO {
+    private String testId;
+    // Completed submissions analysed
+    private long submissions;
+    private LocalDateTime computedAt;
+    private List<Item> items;
+
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Item {
+        private String questionId;
+        // Position in the test, 1-based
+        private int number;
+        // Submissions whose answer sheet contained the question
+        private long responses;
+        // Share of responses that were correct (difficulty)
+        private Double pValue;
+        // Correlation of the item with the score on the other questions
+        private Double pointBiserial;
+        // p-value of the top 27% of scores minus that of the bottom 27%
+        private Double discriminationIndex;
+    }
+}
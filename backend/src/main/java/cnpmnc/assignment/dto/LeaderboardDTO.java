@@ -0,0 +1,37 @@
+package cnpmnc.assignment.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class LeaderboardDTO {
+    private String testId;
+    private double maxScore;
+    // Completed submissions on the leaderboard
+    private int total;
+    private int page;
+    private int size;
+    private List<Entry> entries;
+    // The requesting student's entry; null for teachers and students who have not submitted
+    private Entry you;
+
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Entry {
+        private int rank;
+        private String studentId;
+        private String studentName;
+        private double score;
+        private LocalDateTime submittedAt;
+    }
+}
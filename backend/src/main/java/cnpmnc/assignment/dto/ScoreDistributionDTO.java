@@ -0,0 +1,36 @@
+package cnpmnc.assignment.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class ScoreDistributionDTO {
+    private String testId;
+    // Completed submissions in the distribution
+    private long count;
+    private double maxScore;
+    private Double median;
+    private Double firstQuartile;
+    private Double thirdQuartile;
+    // Requested percentile (e.g. "90") to score
+    private Map<String, Double> percentiles;
+    private List<Bucket> histogram;
+
+    @Getter
+    @Setter
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Bucket {
+        private double fromScore;
+        private double toScore;
+        private long count;
+    }
+}
@@ -1,5 +1,6 @@
 package cnpmnc.assignment.dto;
 
+import cnpmnc.assignment.model.Submission;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -22,4 +23,11 @@ public class StudentGradeDTO {
     private double percentage;
     private LocalDateTime submittedAt;
     private String status;
+
+    // Constructor expression used by SubmissionRepository.findGradeRows
+    public StudentGradeDTO(String submissionId, String testId, String testName, String classId, String className,
+                           double score, double maxScore, LocalDateTime submittedAt, Submission.SubmissionStatus status) {
+        this(submissionId, testId, testName, classId, className, score, maxScore,
+                maxScore > 0 ? score / maxScore * 100 : 0.0, submittedAt, status.name());
+    }
 }
@@ -23,6 +23,13 @@ public class StudentSubmissionDTO {
     private Integer completionTime;
     private String status;
 
+    // Constructor expression used by SubmissionRepository.findResultRowsByTestId
+    public StudentSubmissionDTO(String submissionId, String studentId, String studentName, String studentEmail,
+                                double score, double maxScore, LocalDateTime submittedAt, Integer completionTime,
+                                Submission.SubmissionStatus status) {
+        this(submissionId, studentId, studentName, studentEmail, score, maxScore, submittedAt, completionTime, status.name());
+    }
+
     public static StudentSubmissionDTO fromSubmission(Submission submission) {
         StudentSubmissionDTO dto = new StudentSubmissionDTO();
         dto.setSubmissionId(submission.getId());
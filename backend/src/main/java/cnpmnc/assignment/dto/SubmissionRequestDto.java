@@ -15,4 +15,8 @@ public class SubmissionRequestDto {
     private String userId;
 
     private List<AnswerDto> answers;
+
+    // Same token on a retry returns the original result; the Idempotency-Key header takes precedence
+    @JsonProperty("idempotency_key")
+    private String idempotencyKey;
 }
@@ -16,4 +16,7 @@ public class TestResultsResponseDTO {
     private String testName;
     private List<StudentSubmissionDTO> submissions;
     private TestResultsSummaryDTO summary;
+    // Page of submissions; summary.totalSubmissions is the total across pages
+    private int page;
+    private int size;
 }
@@ -16,4 +16,5 @@ public class TestResultsSummaryDTO {
     private double averageScore;
     private double maxScore;
     private double completionRate;
+    private double standardDeviation;
 }
@@ -0,0 +1,39 @@
+package cnpmnc.assignment.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Question order that packed submission answers are indexed by; shared by every submission made against
+// the same set of questions of a test
+@Entity
+@Table(name = "answer_layouts")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AnswerLayout {
+
+    // Name-based UUID of the test id and its ordered question ids
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Column(name = "test_id", nullable = false, length = 255)
+    private String testId;
+
+    // Comma-separated question ids in index order
+    @Column(name = "question_ids", nullable = false, columnDefinition = "TEXT")
+    private String questionIds;
+
+    @Column(name = "question_count", nullable = false)
+    private int questionCount;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
@@ -47,7 +47,8 @@ public class Class {
     @JoinTable(
         name = "class_students",
         joinColumns = @JoinColumn(name = "class_id"),
-        inverseJoinColumns = @JoinColumn(name = "student_id")
+        inverseJoinColumns = @JoinColumn(name = "student_id"),
+        indexes = @Index(name = "idx_class_students_student_class", columnList = "student_id, class_id")
     )
     private Set<User> students = new HashSet<>();
 
@@ -0,0 +1,35 @@
+package cnpmnc.assignment.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Persisted score sketch of a test, so percentiles survive a restart without rescanning its submissions
+@Entity
+@Table(name = "score_distributions")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScoreDistribution {
+
+    @Id
+    @Column(name = "test_id", length = 255)
+    private String testId;
+
+    // ScoreSketch.toBytes()
+    @Column(name = "sketch", nullable = false)
+    private byte[] sketch;
+
+    // Completed submissions counted in the sketch; a mismatch with the database means it is stale
+    @Column(name = "sample_count", nullable = false)
+    private long sampleCount;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
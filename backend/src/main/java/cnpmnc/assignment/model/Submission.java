@@ -1,26 +1,32 @@
 package cnpmnc.assignment.model;
 
+import cnpmnc.assignment.util.TimeOrderedUuidGenerator;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
-import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.UuidGenerator;
 
 import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "submissions")
+@Table(name = "submissions", uniqueConstraints = {
+        // One submission per student and test; retries are resolved against the existing row
+        @UniqueConstraint(name = "uk_submissions_test_student", columnNames = {"test_id", "student_id"})
+}, indexes = {
+        // A student's grades, newest first, paged by (submitted_at, id)
+        @Index(name = "idx_submissions_student_submitted", columnList = "student_id, submitted_at, id")
+})
 @Getter
 @Setter
 @AllArgsConstructor
 @NoArgsConstructor
 public class Submission {
     @Id
-    @GeneratedValue(generator = "uuid")
-    @GenericGenerator(name = "uuid", strategy = "uuid2")
+    @UuidGenerator(algorithm = TimeOrderedUuidGenerator.class)
     private String id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -43,10 +49,42 @@ public class Submission {
     @Column
     private Integer completionTime; // in minutes
 
+    // Set when the attempt was started through the exam attempt lifecycle; its deadline derives from it
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
     @Column(nullable = false)
     @Enumerated(EnumType.STRING)
     private SubmissionStatus status = SubmissionStatus.COMPLETED;
 
+    // Client-supplied token of the request that created this submission
+    @Column(name = "idempotency_key", length = 64)
+    private String idempotencyKey;
+
+    // Autosaved answers of an open attempt, questionId -> answer as JSON; cleared once graded
+    @Column(name = "draft_answers", columnDefinition = "TEXT")
+    private String draftAnswers;
+
+    // Raw answers of a submission queued for asynchronous grading; cleared once graded
+    @Column(columnDefinition = "TEXT")
+    private String pendingAnswers;
+
+    // Packed answers, indexed by the question order of the AnswerLayout
+    @Column(name = "layout_id", length = 36)
+    private String layoutId;
+
+    // Selected choice per question, 4 bits each (see PackedAnswers)
+    @Column(name = "packed_answers")
+    private byte[] packedAnswers;
+
+    // Bit i is set when question i was answered correctly
+    @Column(name = "correct_bitmap")
+    private byte[] correctBitmap;
+
+    @Column(name = "correct_count")
+    private Integer correctCount;
+
+    // Legacy per-question rows; PackedAnswerMigration folds them into the packed columns
     @OneToMany(mappedBy = "submission", cascade = CascadeType.ALL, orphanRemoval = true)
     private Set<SubmissionAnswer> answers = new HashSet<>();
 
@@ -67,6 +105,11 @@ public class Submission {
         updatedAt = LocalDateTime.now();
     }
 
+    // Started attempt that has neither been submitted nor queued for grading yet
+    public boolean isOpenAttempt() {
+        return status == SubmissionStatus.IN_PROGRESS && startedAt != null && pendingAnswers == null;
+    }
+
     public enum SubmissionStatus {
         COMPLETED,
         IN_PROGRESS,
@@ -1,11 +1,12 @@
 package cnpmnc.assignment.model;
 
+import cnpmnc.assignment.util.TimeOrderedUuidGenerator;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
-import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.UuidGenerator;
 
 @Entity
 @Table(name = "submission_answers")
@@ -15,8 +16,7 @@ import org.hibernate.annotations.GenericGenerator;
 @NoArgsConstructor
 public class SubmissionAnswer {
     @Id
-    @GeneratedValue(generator = "uuid")
-    @GenericGenerator(name = "uuid", strategy = "uuid2")
+    @UuidGenerator(algorithm = TimeOrderedUuidGenerator.class)
     private String id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -54,4 +54,24 @@ public class Test {
     @JsonIgnore
     private List<Question> questions;
 
+    // Time by which an attempt started at startedAt must be submitted: its duration (minutes), capped by closeTime
+    public LocalDateTime attemptDeadline(LocalDateTime startedAt) {
+        return attemptDeadline(startedAt, duration, closeTime);
+    }
+
+    // Time by which a submission made without an attempt must arrive, as if the attempt started when the test
+    // opened; null when the test has neither an open nor a close time
+    public LocalDateTime submissionDeadline() {
+        return submissionDeadline(openTime, duration, closeTime);
+    }
+
+    // The same rules for callers that only hold the test's timing columns
+    public static LocalDateTime attemptDeadline(LocalDateTime startedAt, long duration, LocalDateTime closeTime) {
+        LocalDateTime deadline = startedAt.plusMinutes(duration);
+        return closeTime != null && closeTime.isBefore(deadline) ? closeTime : deadline;
+    }
+
+    public static LocalDateTime submissionDeadline(LocalDateTime openTime, long duration, LocalDateTime closeTime) {
+        return openTime != null ? attemptDeadline(openTime, duration, closeTime) : closeTime;
+    }
 }
@@ -0,0 +1,9 @@
+package cnpmnc.assignment.repository;
+
+import cnpmnc.assignment.model.AnswerLayout;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface AnswerLayoutRepository extends JpaRepository<AnswerLayout, String> {
+}
@@ -1,12 +0,0 @@
-package cnpmnc.assignment.repository;
-
-import cnpmnc.assignment.model.Choice;
-import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.stereotype.Repository;
-
-import java.util.List;
-
-@Repository
-public interface ChoiceRepository extends JpaRepository<Choice, Long> {
-    List<Choice> findByTestId(String testId);
-}
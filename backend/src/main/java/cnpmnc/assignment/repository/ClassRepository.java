@@ -3,6 +3,8 @@ package cnpmnc.assignment.repository;
 import cnpmnc.assignment.model.Class;
 import cnpmnc.assignment.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -19,4 +21,7 @@ public interface ClassRepository extends JpaRepository<Class, String> {
     List<Class> findByTeacher(User teacher);
     
     List<Class> findByStudentsContaining(User student);
+
+    @Query("SELECT s.id FROM Class c JOIN c.students s WHERE c.id = :classId")
+    List<String> findStudentIdsByClassId(@Param("classId") String classId);
 }
@@ -2,6 +2,8 @@ package cnpmnc.assignment.repository;
 
 import cnpmnc.assignment.model.Question;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -9,4 +11,12 @@ import java.util.List;
 @Repository
 public interface QuestionRepository extends JpaRepository<Question, String> {
     List<Question> findByTest_Id(String testId);
+
+    @Query("SELECT q.id AS id, q.answer AS answer FROM Question q WHERE q.test.id = :testId ORDER BY q.id")
+    List<AnswerView> findAnswersByTestId(@Param("testId") String testId);
+
+    interface AnswerView {
+        String getId();
+        String getAnswer();
+    }
 }
@@ -1,12 +1,16 @@
 package cnpmnc.assignment.repository;
 
+import cnpmnc.assignment.dto.StudentGradeDTO;
+import cnpmnc.assignment.dto.StudentSubmissionDTO;
 import cnpmnc.assignment.model.Submission;
 import cnpmnc.assignment.model.Test;
 import cnpmnc.assignment.model.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,10 +22,34 @@ public interface SubmissionRepository extends JpaRepository<Submission, String>
     
     List<Submission> findByStudentId(String studentId);
     
-    @Query("SELECT s FROM Submission s JOIN FETCH s.test t JOIN FETCH t.clazz WHERE s.student.id = :studentId")
-    List<Submission> findByStudentIdWithTestAndClass(@Param("studentId") String studentId);
+    // Newest first; the next page continues after the (submittedAt, id) of the last row
+    @Query("SELECT new cnpmnc.assignment.dto.StudentGradeDTO(s.id, t.id, t.title, c.id, c.name, s.score, s.maxScore, " +
+           "s.submittedAt, s.status) " +
+           "FROM Submission s JOIN s.test t JOIN t.clazz c " +
+           "WHERE s.student.id = :studentId AND (:classId IS NULL OR c.id = :classId) " +
+           "ORDER BY s.submittedAt DESC, s.id DESC")
+    List<StudentGradeDTO> findGradeRows(@Param("studentId") String studentId, @Param("classId") String classId,
+                                        Pageable pageable);
+
+    @Query("SELECT new cnpmnc.assignment.dto.StudentGradeDTO(s.id, t.id, t.title, c.id, c.name, s.score, s.maxScore, " +
+           "s.submittedAt, s.status) " +
+           "FROM Submission s JOIN s.test t JOIN t.clazz c " +
+           "WHERE s.student.id = :studentId AND (:classId IS NULL OR c.id = :classId) " +
+           "AND (s.submittedAt < :submittedAt OR (s.submittedAt = :submittedAt AND s.id < :id)) " +
+           "ORDER BY s.submittedAt DESC, s.id DESC")
+    List<StudentGradeDTO> findGradeRowsBefore(@Param("studentId") String studentId, @Param("classId") String classId,
+                                              @Param("submittedAt") LocalDateTime submittedAt, @Param("id") String id,
+                                              Pageable pageable);
+
+    // Changes whenever a submission of the student is added, graded, regraded or removed
+    @Query("SELECT COUNT(s) AS count, MAX(s.submittedAt) AS latestSubmittedAt, MAX(s.updatedAt) AS latestUpdatedAt " +
+           "FROM Submission s WHERE s.student.id = :studentId")
+    GradesVersionView findGradesVersion(@Param("studentId") String studentId);
     
     Optional<Submission> findByTestAndStudent(Test test, User student);
+
+    @Query("SELECT s FROM Submission s JOIN FETCH s.test WHERE s.id = :id")
+    Optional<Submission> findByIdWithTest(@Param("id") String id);
     
     @Query("SELECT s FROM Submission s WHERE s.test.id = :testId ORDER BY s.score DESC")
     List<Submission> findByTestIdOrderByScoreDesc(@Param("testId") String testId);
@@ -37,4 +65,48 @@ public interface SubmissionRepository extends JpaRepository<Submission, String>
     
     @Query("SELECT AVG(s.score) FROM Submission s WHERE s.test.id = :testId")
     Double findAvgScoreByTestId(@Param("testId") String testId);
+
+    @Query("SELECT new cnpmnc.assignment.dto.StudentSubmissionDTO(s.id, st.id, st.email, st.email, s.score, s.maxScore, " +
+           "s.submittedAt, s.completionTime, s.status) " +
+           "FROM Submission s JOIN s.student st WHERE s.test.id = :testId ORDER BY s.score DESC, s.id")
+    List<StudentSubmissionDTO> findResultRowsByTestId(@Param("testId") String testId, Pageable pageable);
+
+    @Query("SELECT s.id FROM Submission s WHERE s.status = :status AND s.pendingAnswers IS NOT NULL ORDER BY s.submittedAt")
+    List<String> findPendingIds(@Param("status") Submission.SubmissionStatus status);
+
+    @Query("SELECT s.id AS id, s.test.id AS testId, s.pendingAnswers AS pendingAnswers, st.id AS studentId, " +
+           "st.email AS studentEmail, s.submittedAt AS submittedAt FROM Submission s JOIN s.student st " +
+           "WHERE s.id IN :ids AND s.status = :status AND s.pendingAnswers IS NOT NULL")
+    List<PendingView> findPendingByIds(@Param("ids") List<String> ids,
+                                       @Param("status") Submission.SubmissionStatus status);
+
+    @Query("SELECT s.id AS id, t.id AS testId, s.student.id AS studentId, s.startedAt AS startedAt, " +
+           "t.duration AS duration, t.closeTime AS closeTime " +
+           "FROM Submission s JOIN s.test t " +
+           "WHERE s.status = :status AND s.startedAt IS NOT NULL AND s.pendingAnswers IS NULL")
+    List<AttemptView> findOpenAttempts(@Param("status") Submission.SubmissionStatus status);
+
+    interface AttemptView {
+        String getId();
+        String getTestId();
+        String getStudentId();
+        LocalDateTime getStartedAt();
+        long getDuration();
+        LocalDateTime getCloseTime();
+    }
+
+    interface GradesVersionView {
+        long getCount();
+        LocalDateTime getLatestSubmittedAt();
+        LocalDateTime getLatestUpdatedAt();
+    }
+
+    interface PendingView {
+        String getId();
+        String getTestId();
+        String getPendingAnswers();
+        String getStudentId();
+        String getStudentEmail();
+        LocalDateTime getSubmittedAt();
+    }
 }
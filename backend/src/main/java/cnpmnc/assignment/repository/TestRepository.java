@@ -2,10 +2,22 @@ package cnpmnc.assignment.repository;
 
 import cnpmnc.assignment.model.Test;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 public interface TestRepository extends JpaRepository<Test, String> {
     boolean existsByPasscode(String passcode);
     Optional<Test> findByPasscode(String passcode);
+    List<Test> findByOpenTimeBetween(LocalDateTime from, LocalDateTime to);
+
+    @Query("SELECT t.id AS id, t.passcode AS passcode FROM Test t")
+    List<PasscodeView> findAllPasscodes();
+
+    interface PasscodeView {
+        String getId();
+        String getPasscode();
+    }
 }
@@ -0,0 +1,236 @@
+package cnpmnc.assignment.service;
+
+import cnpmnc.assignment.cache.AnswerKey;
+import cnpmnc.assignment.cache.AnswerKeyCache;
+import cnpmnc.assignment.dto.AnswerDto;
+import cnpmnc.assignment.model.Submission;
+import cnpmnc.assignment.model.User;
+import cnpmnc.assignment.repository.SubmissionRepository;
+import cnpmnc.assignment.util.AfterCommit;
+import cnpmnc.assignment.util.MetricsSource;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Write-behind buffer for autosaved answers of open exam attempts. Deltas are merged per attempt in memory and
+// each dirty attempt is written once per flush interval, however many autosaves it received in between.
+@Service
+@RequiredArgsConstructor
+public class AutosaveService implements MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(AutosaveService.class);
+
+    private final SubmissionRepository submissionRepository;
+    private final AnswerKeyCache answerKeyCache;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${exam.attempt.grace-seconds:30}")
+    private long graceSeconds;
+
+    @Value("${submission.autosave.idle-minutes:30}")
+    private long idleMinutes;
+
+    private final Map<String, Draft> drafts = new ConcurrentHashMap<>();
+    private final AtomicLong autosaves = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+
+    public Map<String, Object> save(String submissionId, List<AnswerDto> answers, User currentUser) {
+        Draft draft = drafts.get(submissionId);
+        if (draft == null) {
+            draft = drafts.computeIfAbsent(submissionId, this::load);
+        }
+        if (!draft.studentId.equals(currentUser.getId())) {
+            throw new SecurityException("You can only save answers of your own attempt");
+        }
+        if (LocalDateTime.now().isAfter(draft.closesAt)) {
+            throw new IllegalArgumentException("Time is up for this test");
+        }
+        if (answers != null) {
+            // Only questions of the test are buffered, which also bounds the draft to the test's size
+            AnswerKey answerKey = answerKeyCache.get(draft.testId);
+            for (AnswerDto answer : answers) {
+                if (answer.getQuestionId() != null && answerKey.indexOf(answer.getQuestionId()) < 0) {
+                    throw new IllegalArgumentException("Question " + answer.getQuestionId() + " is not part of this test");
+                }
+            }
+            for (AnswerDto answer : answers) {
+                if (answer.getQuestionId() == null) {
+                    continue;
+                }
+                if (answer.getSubmitAnswer() == null) {
+                    draft.answers.remove(answer.getQuestionId());
+                } else {
+                    draft.answers.put(answer.getQuestionId(), answer.getSubmitAnswer());
+                }
+            }
+        }
+        draft.lastTouched = System.currentTimeMillis();
+        draft.dirty = true;
+        autosaves.incrementAndGet();
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("submissionId", submissionId);
+        response.put("savedAnswers", draft.answers.size());
+        return response;
+    }
+
+    @Scheduled(fixedDelayString = "${submission.autosave.flush-interval-ms:5000}")
+    public void flush() {
+        List<String> ids = new ArrayList<>();
+        List<Object[]> rows = new ArrayList<>();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        long idleBefore = System.currentTimeMillis() - idleMinutes * 60_000;
+        for (Map.Entry<String, Draft> entry : drafts.entrySet()) {
+            Draft draft = entry.getValue();
+            if (draft.dirty) {
+                // Cleared before the snapshot: a delta arriving meanwhile marks it dirty again for the next flush
+                draft.dirty = false;
+                ids.add(entry.getKey());
+                rows.add(new Object[]{write(draft.answers), now, entry.getKey()});
+            } else if (draft.lastTouched < idleBefore) {
+                drafts.remove(entry.getKey(), draft);
+            }
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            int[] updated = jdbcTemplate.batchUpdate(
+                    "UPDATE submissions SET draft_answers = ?, updated_at = ? " +
+                            "WHERE id = ? AND status = 'IN_PROGRESS' AND pending_answers IS NULL",
+                    rows);
+            for (int i = 0; i < updated.length; i++) {
+                // Submitted or finalized in the meantime
+                if (updated[i] == 0) {
+                    drafts.remove(ids.get(i));
+                }
+            }
+            writes.addAndGet(rows.size());
+            flushes.incrementAndGet();
+        } catch (RuntimeException e) {
+            for (String id : ids) {
+                Draft draft = drafts.get(id);
+                if (draft != null) {
+                    draft.dirty = true;
+                }
+            }
+            logger.warn("Autosave flush of {} attempts failed, retrying on the next run: {}", rows.size(), e.getMessage());
+        }
+    }
+
+    // The attempt's answers for grading: the buffered draft, or the persisted one when nothing is buffered, overridden
+    // by the submitted answers, where a null answer clears the question. The buffer is kept until discard().
+    public List<AnswerDto> merge(String submissionId, String persistedDraft, List<AnswerDto> submitted) {
+        Draft draft = drafts.get(submissionId);
+        // The buffer started from the persisted draft, so it already reflects every clear made since
+        Map<String, String> merged = new LinkedHashMap<>(draft != null ? draft.answers : read(persistedDraft));
+        if (submitted != null) {
+            for (AnswerDto answer : submitted) {
+                if (answer.getQuestionId() == null) {
+                    continue;
+                }
+                if (answer.getSubmitAnswer() == null) {
+                    merged.remove(answer.getQuestionId());
+                } else {
+                    merged.put(answer.getQuestionId(), answer.getSubmitAnswer());
+                }
+            }
+        }
+        List<AnswerDto> answers = new ArrayList<>(merged.size());
+        merged.forEach((questionId, selected) -> {
+            AnswerDto answer = new AnswerDto();
+            answer.setQuestionId(questionId);
+            answer.setSubmitAnswer(selected);
+            answers.add(answer);
+        });
+        return answers;
+    }
+
+    // Drops the buffered draft once the attempt's grade or queued answers are committed
+    public void discard(String submissionId) {
+        AfterCommit.run(() -> drafts.remove(submissionId));
+    }
+
+    @Override
+    public String metricsName() {
+        return "autosave";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        long saved = autosaves.get();
+        long written = writes.get();
+        return Map.of(
+                "bufferedAttempts", drafts.size(),
+                "autosaves", saved,
+                "rowsWritten", written,
+                "flushes", flushes.get(),
+                "autosavesPerWrite", written > 0 ? (double) saved / written : 0.0
+        );
+    }
+
+    private Draft load(String submissionId) {
+        Submission attempt = submissionRepository.findByIdWithTest(submissionId)
+                .orElseThrow(() -> new IllegalArgumentException("Submission not found"));
+        if (!attempt.isOpenAttempt()) {
+            throw new IllegalArgumentException("This attempt is no longer in progress");
+        }
+        LocalDateTime closesAt = attempt.getTest().attemptDeadline(attempt.getStartedAt()).plusSeconds(graceSeconds);
+        Draft draft = new Draft(attempt.getTest().getId(), attempt.getStudent().getId(), closesAt);
+        draft.answers.putAll(read(attempt.getDraftAnswers()));
+        return draft;
+    }
+
+    private String write(Map<String, String> answers) {
+        try {
+            return objectMapper.writeValueAsString(answers);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize draft answers", e);
+        }
+    }
+
+    private Map<String, String> read(String json) {
+        if (json == null) {
+            return Map.of();
+        }
+        try {
+            return objectMapper.readValue(json, new TypeReference<Map<String, String>>() {});
+        } catch (JsonProcessingException e) {
+            logger.warn("Ignoring unreadable draft answers: {}", e.getMessage());
+            return Map.of();
+        }
+    }
+
+    private static final class Draft {
+        private final String testId;
+        private final String studentId;
+        private final LocalDateTime closesAt;
+        private final Map<String, String> answers = new ConcurrentHashMap<>();
+        private volatile boolean dirty;
+        private volatile long lastTouched = System.currentTimeMillis();
+
+        private Draft(String testId, String studentId, LocalDateTime closesAt) {
+            this.testId = testId;
+            this.studentId = studentId;
+            this.closesAt = closesAt;
+        }
+    }
+}
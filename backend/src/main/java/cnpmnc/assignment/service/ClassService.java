@@ -1,5 +1,6 @@
 package cnpmnc.assignment.service;
 
+import cnpmnc.assignment.cache.ClassMembershipIndex;
 import cnpmnc.assignment.dto.AddStudentRequest;
 import cnpmnc.assignment.dto.ClassDto;
 import cnpmnc.assignment.dto.CreateClassRequest;
@@ -23,6 +24,7 @@ public class ClassService {
     
     private final ClassRepository classRepository;
     private final UserRepository userRepository;
+    private final ClassMembershipIndex classMembershipIndex;
     
     @Transactional(readOnly = true)
     public ClassDto getClassInfo(String classId, User currentUser) {
@@ -93,6 +95,7 @@ public class ClassService {
         // Add student to class
         classEntity.getStudents().add(student);
         classRepository.save(classEntity);
+        classMembershipIndex.addStudent(classId, student.getId());
         
         return convertToStudentDto(student);
     }
@@ -163,6 +166,7 @@ public class ClassService {
             throw new IllegalArgumentException("Class not found");
         }
         classRepository.deleteById(classId);
+        classMembershipIndex.evict(classId);
     }
     
     @Transactional
@@ -234,6 +238,7 @@ public class ClassService {
         // Add student to class
         classEntity.getStudents().add(student);
         classRepository.save(classEntity);
+        classMembershipIndex.addStudent(classEntity.getId(), student.getId());
         
         return convertToClassDto(classEntity);
     }
@@ -269,6 +274,7 @@ public class ClassService {
         }
         
         classRepository.delete(classEntity);
+        classMembershipIndex.evict(classId);
     }
 
     @Transactional
@@ -288,6 +294,7 @@ public class ClassService {
         if (classEntity.getStudents().contains(student)) {
             classEntity.getStudents().remove(student);
             classRepository.save(classEntity);
+            classMembershipIndex.removeStudent(classId, studentId);
         } else {
             throw new IllegalArgumentException("Student is not enrolled in this class");
         }
@@ -0,0 +1,261 @@
+package cnpmnc.assignment.service;
+
+import cnpmnc.assignment.cache.AnswerKey;
+import cnpmnc.assignment.cache.AnswerKeyCache;
+import cnpmnc.assignment.cache.ClassMembershipIndex;
+import cnpmnc.assignment.cache.OpenAttemptIndex;
+import cnpmnc.assignment.cache.TestStatsRegistry;
+import cnpmnc.assignment.model.Submission;
+import cnpmnc.assignment.model.Test;
+import cnpmnc.assignment.model.User;
+import cnpmnc.assignment.repository.SubmissionRepository;
+import cnpmnc.assignment.repository.TestRepository;
+import cnpmnc.assignment.repository.UserRepository;
+import cnpmnc.assignment.util.MetricsSource;
+import cnpmnc.assignment.util.TimingWheel;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Server-side exam attempts: starting an attempt persists its start time and arms a timer in a hierarchical
+// timing wheel; attempts still open when their deadline (plus grace) passes are finalized automatically.
+// The wheel only lives in memory and is rebuilt from the persisted start times on startup, retried until the
+// database answers.
+@Service
+@RequiredArgsConstructor
+public class ExamAttemptService implements MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExamAttemptService.class);
+
+    private final TestRepository testRepository;
+    private final UserRepository userRepository;
+    private final SubmissionRepository submissionRepository;
+    private final SubmissionService submissionService;
+    private final AnswerKeyCache answerKeyCache;
+    private final ClassMembershipIndex classMembershipIndex;
+    private final TestStatsRegistry testStatsRegistry;
+    private final OpenAttemptIndex openAttemptIndex;
+
+    @Value("${exam.attempt.grace-seconds:30}")
+    private long graceSeconds;
+
+    @Value("${exam.attempt.tick-ms:1000}")
+    private long tickMs;
+
+    // Timers are held by the open attempt index, which cancels them once the attempt is graded and keeps the rebuild
+    // from arming attempts started meanwhile twice
+    private TimingWheel<Deadline> wheel;
+    private volatile boolean rebuildPending;
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong finalized = new AtomicLong();
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "exam-deadlines");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Finalizing touches the database, so it runs off the ticking thread
+    private final ExecutorService finalizer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "exam-finalizer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        synchronized (this) {
+            wheel = new TimingWheel<>(tickMs, 512, System.currentTimeMillis());
+        }
+        ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        rebuildDeadlines();
+    }
+
+    @Scheduled(fixedDelayString = "${startup.retry-interval-ms:30000}")
+    public void retryRebuild() {
+        if (rebuildPending) {
+            rebuildDeadlines();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        ticker.shutdownNow();
+        finalizer.shutdownNow();
+    }
+
+    // Starts the student's attempt, or resumes the one already running
+    public Map<String, Object> startAttempt(String testId, User currentUser) {
+        Test test = testRepository.findById(testId)
+                .orElseThrow(() -> new IllegalArgumentException("Test not found"));
+        if (!classMembershipIndex.isMember(test.getClazz().getId(), currentUser.getId())) {
+            throw new SecurityException("You are not enrolled in the class for this test");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (test.getOpenTime() != null && now.isBefore(test.getOpenTime())) {
+            throw new IllegalArgumentException("Test is not open yet");
+        }
+        if (test.getCloseTime() != null && !now.isBefore(test.getCloseTime())) {
+            throw new IllegalArgumentException("Test is closed");
+        }
+        AnswerKey answerKey = answerKeyCache.get(testId);
+        if (answerKey.size() == 0) {
+            throw new IllegalArgumentException("No questions found for this test");
+        }
+
+        User student = userRepository.getReferenceById(currentUser.getId());
+        Submission attempt = new Submission();
+        attempt.setTest(test);
+        attempt.setStudent(student);
+        attempt.setStartedAt(now);
+        attempt.setSubmittedAt(now);
+        attempt.setStatus(Submission.SubmissionStatus.IN_PROGRESS);
+        attempt.setMaxScore(answerKey.size() * SubmissionService.POINTS_PER_QUESTION);
+        try {
+            attempt = submissionRepository.save(attempt);
+        } catch (DataIntegrityViolationException e) {
+            Submission existing = submissionRepository.findByTestAndStudent(test, student).orElseThrow(() -> e);
+            if (!existing.isOpenAttempt()) {
+                throw new IllegalArgumentException("You have already submitted this test");
+            }
+            openAttemptIndex.put(testId, currentUser.getId(), existing.getStartedAt(),
+                    test.attemptDeadline(existing.getStartedAt()));
+            return describe(existing, test);
+        }
+        testStatsRegistry.recordStarted(testId);
+        started.incrementAndGet();
+        openAttemptIndex.put(testId, currentUser.getId(), now, test.attemptDeadline(now));
+        schedule(new Deadline(attempt.getId(), testId, currentUser.getId(), now), test.attemptDeadline(now));
+        return describe(attempt, test);
+    }
+
+    @Override
+    public String metricsName() {
+        return "examAttempts";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (this) {
+            stats.put("pendingTimers", wheel != null ? wheel.size() : 0);
+        }
+        stats.put("openAttempts", openAttemptIndex.size());
+        stats.put("rebuildPending", rebuildPending);
+        stats.put("started", started.get());
+        stats.put("autoFinalized", finalized.get());
+        return stats;
+    }
+
+    private Map<String, Object> describe(Submission attempt, Test test) {
+        LocalDateTime deadline = test.attemptDeadline(attempt.getStartedAt());
+        Map<String, Object> response = new HashMap<>();
+        response.put("submissionId", attempt.getId());
+        response.put("status", attempt.getStatus().name());
+        response.put("startedAt", attempt.getStartedAt());
+        response.put("deadline", deadline);
+        response.put("remainingSeconds", Math.max(0, Duration.between(LocalDateTime.now(), deadline).getSeconds()));
+        return response;
+    }
+
+    private void rebuildDeadlines() {
+        List<SubmissionRepository.AttemptView> open;
+        try {
+            open = submissionRepository.findOpenAttempts(Submission.SubmissionStatus.IN_PROGRESS);
+        } catch (DataAccessException | TransactionException e) {
+            rebuildPending = true;
+            logger.warn("Could not rebuild exam deadlines, retrying later: {}", e.getMessage());
+            return;
+        }
+        rebuildPending = false;
+        for (SubmissionRepository.AttemptView attempt : open) {
+            LocalDateTime deadline = Test.attemptDeadline(attempt.getStartedAt(), attempt.getDuration(), attempt.getCloseTime());
+            openAttemptIndex.put(attempt.getTestId(), attempt.getStudentId(), attempt.getStartedAt(), deadline);
+            schedule(new Deadline(attempt.getId(), attempt.getTestId(), attempt.getStudentId(), attempt.getStartedAt()),
+                    deadline);
+        }
+        if (!open.isEmpty()) {
+            logger.info("Rebuilt deadlines of {} open exam attempts", open.size());
+        }
+    }
+
+    private void schedule(Deadline deadline, LocalDateTime at) {
+        long dueMs = at.plusSeconds(graceSeconds).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        TimingWheel.Timeout<Deadline> timeout;
+        synchronized (this) {
+            // Not started yet: the attempt is picked up by the rebuild in start()
+            if (wheel == null) {
+                return;
+            }
+            timeout = wheel.schedule(deadline, dueMs);
+            if (!openAttemptIndex.arm(deadline.testId, deadline.studentId, timeout)) {
+                return;
+            }
+        }
+        if (timeout == null) {
+            finalizer.submit(() -> expire(deadline));
+        }
+    }
+
+    private void tick() {
+        List<Deadline> expired;
+        synchronized (this) {
+            expired = wheel.advance(System.currentTimeMillis());
+        }
+        for (Deadline deadline : expired) {
+            finalizer.submit(() -> expire(deadline));
+        }
+    }
+
+    private void expire(Deadline deadline) {
+        openAttemptIndex.disarm(deadline.testId, deadline.studentId);
+        try {
+            SubmissionService.Expiry expiry =
+                    submissionService.finalizeExpiredAttempt(deadline.submissionId, deadline.testId, deadline.startedAt);
+            if (expiry.isFinalized()) {
+                finalized.incrementAndGet();
+                logger.info("Auto-submitted expired attempt {} of test {}", deadline.submissionId, deadline.testId);
+            } else if (expiry.getExtendedTo() != null) {
+                // The test was extended after the timer was armed
+                openAttemptIndex.put(deadline.testId, deadline.studentId, deadline.startedAt, expiry.getExtendedTo());
+                schedule(deadline, expiry.getExtendedTo());
+            }
+        } catch (RuntimeException e) {
+            // The attempt stays open and is picked up again when the wheel is rebuilt on the next start
+            logger.error("Could not finalize expired attempt {}", deadline.submissionId, e);
+        }
+    }
+
+    private static final class Deadline {
+        private final String submissionId;
+        private final String testId;
+        private final String studentId;
+        private final LocalDateTime startedAt;
+
+        private Deadline(String submissionId, String testId, String studentId, LocalDateTime startedAt) {
+            this.submissionId = submissionId;
+            this.testId = testId;
+            this.studentId = studentId;
+            this.startedAt = startedAt;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package cnpmnc.assignment.service;
+
+import cnpmnc.assignment.cache.AnswerKeyCache;
+import cnpmnc.assignment.cache.ClassMembershipIndex;
+import cnpmnc.assignment.cache.PasscodeIndex;
+import cnpmnc.assignment.model.Test;
+import cnpmnc.assignment.repository.TestRepository;
+import cnpmnc.assignment.util.MetricsSource;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Loads tests opening soon into the exam caches so the first students do not pay for cold loads
+@Service
+@RequiredArgsConstructor
+public class ExamPrewarmService implements MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExamPrewarmService.class);
+
+    private final TestRepository testRepository;
+    private final TestService testService;
+    private final PasscodeIndex passcodeIndex;
+    private final ClassMembershipIndex classMembershipIndex;
+    private final AnswerKeyCache answerKeyCache;
+
+    @Value("${exam.prewarm.horizon-minutes:15}")
+    private long horizonMinutes;
+
+    private volatile Map<String, Object> lastRun = Map.of();
+
+    @Scheduled(fixedDelayString = "${exam.prewarm.interval-ms:60000}", initialDelayString = "${exam.prewarm.initial-delay-ms:30000}")
+    public void prewarmUpcomingTests() {
+        long started = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now();
+        List<Test> upcoming = testRepository.findByOpenTimeBetween(now, now.plusMinutes(horizonMinutes));
+
+        int warmed = 0;
+        int failed = 0;
+        for (Test test : upcoming) {
+            try {
+                passcodeIndex.put(test.getPasscode(), test.getId());
+                testService.getExamPaper(test.getId());
+                answerKeyCache.get(test.getId());
+                classMembershipIndex.warm(test.getClazz().getId());
+                warmed++;
+            } catch (RuntimeException e) {
+                failed++;
+                logger.warn("Could not prewarm test {}: {}", test.getId(), e.getMessage());
+            }
+        }
+
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("ranAt", now.toString());
+        report.put("horizonMinutes", horizonMinutes);
+        report.put("warmed", warmed);
+        report.put("failed", failed);
+        report.put("elapsedMs", elapsedMs);
+        lastRun = report;
+        if (!upcoming.isEmpty()) {
+            logger.info("Prewarmed {} upcoming tests ({} failed) in {} ms", warmed, failed, elapsedMs);
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "prewarm";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        return lastRun;
+    }
+}
@@ -0,0 +1,165 @@
+package cnpmnc.assignment.service;
+
+import cnpmnc.assignment.dto.GradebookDTO;
+import cnpmnc.assignment.model.Class;
+import cnpmnc.assignment.model.Role;
+import cnpmnc.assignment.model.User;
+import cnpmnc.assignment.repository.ClassRepository;
+import cnpmnc.assignment.util.CsvWriter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Students x tests score matrix of a class, read with one joined query and held as a double[][]
+// indexed through the row and column maps; NaN marks a test the student has no graded submission for
+@Service
+@RequiredArgsConstructor
+public class GradebookService {
+
+    // Every enrolled student paired with every test of the class, its question count and the submission if there is one
+    private static final String GRADEBOOK_SQL =
+            "SELECT u.id, u.email, u.student_id, t.id, t.title, s.score, COALESCE(qc.question_count, 0) " +
+                    "FROM class_students cs " +
+                    "JOIN users u ON u.id = cs.student_id " +
+                    "LEFT JOIN tests t ON t.class_id = cs.class_id " +
+                    "LEFT JOIN (SELECT q.test_id, COUNT(*) AS question_count FROM questions q " +
+                    "           JOIN tests qt ON qt.id = q.test_id WHERE qt.class_id = ? GROUP BY q.test_id) qc " +
+                    "       ON qc.test_id = t.id " +
+                    "LEFT JOIN submissions s ON s.test_id = t.id AND s.student_id = cs.student_id AND s.status = 'COMPLETED' " +
+                    "WHERE cs.class_id = ? " +
+                    "ORDER BY u.email, t.open_time NULLS LAST, t.id";
+
+    private final ClassRepository classRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    public Gradebook load(String classId, User currentUser) {
+        Class classEntity = classRepository.findById(classId)
+                .orElseThrow(() -> new IllegalArgumentException("Class not found"));
+        if (!classEntity.getTeacher().getId().equals(currentUser.getId()) && currentUser.getRole() != Role.ADMIN) {
+            throw new SecurityException("You are not authorized to access this class");
+        }
+
+        Map<String, Integer> rows = new LinkedHashMap<>();
+        Map<String, Integer> columns = new LinkedHashMap<>();
+        List<String[]> students = new ArrayList<>();
+        List<String> titles = new ArrayList<>();
+        List<Double> maxScores = new ArrayList<>();
+        // Graded cells as (row, column, score) until the matrix size is known
+        List<double[]> cells = new ArrayList<>();
+        jdbcTemplate.query(GRADEBOOK_SQL, (RowCallbackHandler) rs -> {
+            Integer row = rows.get(rs.getString(1));
+            if (row == null) {
+                row = rows.size();
+                rows.put(rs.getString(1), row);
+                students.add(new String[]{rs.getString(1), rs.getString(2), rs.getString(3)});
+            }
+            String testId = rs.getString(4);
+            if (testId == null) {
+                return;
+            }
+            Integer column = columns.get(testId);
+            if (column == null) {
+                column = columns.size();
+                columns.put(testId, column);
+                titles.add(rs.getString(5));
+                maxScores.add(rs.getLong(7) * SubmissionService.POINTS_PER_QUESTION);
+            }
+            double score = rs.getDouble(6);
+            if (!rs.wasNull()) {
+                cells.add(new double[]{row, column, score});
+            }
+        }, classId, classId);
+
+        double[][] matrix = new double[rows.size()][columns.size()];
+        for (double[] row : matrix) {
+            Arrays.fill(row, Double.NaN);
+        }
+        for (double[] cell : cells) {
+            matrix[(int) cell[0]][(int) cell[1]] = cell[2];
+        }
+
+        return new Gradebook(classId, students.toArray(new String[0][]), columns.keySet().toArray(new String[0]),
+                titles.toArray(new String[0]), maxScores.stream().mapToDouble(Double::doubleValue).toArray(), matrix);
+    }
+
+    public GradebookDTO toDto(Gradebook gradebook) {
+        List<GradebookDTO.TestColumn> tests = new ArrayList<>(gradebook.testIds.length);
+        for (int j = 0; j < gradebook.testIds.length; j++) {
+            tests.add(new GradebookDTO.TestColumn(gradebook.testIds[j], gradebook.titles[j], gradebook.maxScores[j]));
+        }
+        List<GradebookDTO.Row> students = new ArrayList<>(gradebook.students.length);
+        for (int i = 0; i < gradebook.students.length; i++) {
+            List<Double> row = new ArrayList<>(gradebook.testIds.length);
+            for (double score : gradebook.scores[i]) {
+                row.add(Double.isNaN(score) ? null : score);
+            }
+            String[] student = gradebook.students[i];
+            students.add(new GradebookDTO.Row(student[0], student[1], student[2], row));
+        }
+        return new GradebookDTO(gradebook.classId, tests, students);
+    }
+
+    // One line per student, written as it is formatted; nothing but the matrix is held in memory
+    public void writeCsv(Gradebook gradebook, OutputStream out) throws IOException {
+        CsvWriter csv = new CsvWriter(out);
+        Object[] header = new Object[3 + gradebook.testIds.length];
+        header[0] = "Student ID";
+        header[1] = "Email";
+        header[2] = "Student code";
+        for (int j = 0; j < gradebook.testIds.length; j++) {
+            header[3 + j] = gradebook.titles[j] + " (/" + formatScore(gradebook.maxScores[j]) + ")";
+        }
+        csv.row(header);
+
+        Object[] line = new Object[header.length];
+        for (int i = 0; i < gradebook.students.length; i++) {
+            String[] student = gradebook.students[i];
+            line[0] = student[0];
+            line[1] = student[1];
+            line[2] = student[2];
+            for (int j = 0; j < gradebook.testIds.length; j++) {
+                double score = gradebook.scores[i][j];
+                line[3 + j] = Double.isNaN(score) ? null : formatScore(score);
+            }
+            csv.row(line);
+        }
+        csv.flush();
+    }
+
+    private static String formatScore(double score) {
+        return score == Math.rint(score) ? Long.toString((long) score) : Double.toString(score);
+    }
+
+    public static final class Gradebook {
+        private final String classId;
+        // Per row: user id, email, student code
+        private final String[][] students;
+        private final String[] testIds;
+        private final String[] titles;
+        private final double[] maxScores;
+        private final double[][] scores;
+
+        private Gradebook(String classId, String[][] students, String[] testIds, String[] titles,
+                          double[] maxScores, double[][] scores) {
+            this.classId = classId;
+            this.students = students;
+            this.testIds = testIds;
+            this.titles = titles;
+            this.maxScores = maxScores;
+            this.scores = scores;
+        }
+
+        public String getClassId() {
+            return classId;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package cnpmnc.assignment.service;
+
+import cnpmnc.assignment.cache.AnswerKey;
+import cnpmnc.assignment.cache.AnswerKeyCache;
+import cnpmnc.assignment.cache.AnswerLayoutStore;
+import cnpmnc.assignment.dto.DistractorAnalysisDTO;
+import cnpmnc.assignment.dto.ItemAnalysisDTO;
+import cnpmnc.assignment.util.AfterCommit;
+import cnpmnc.assignment.util.MetricsSource;
+import cnpmnc.assignment.util.PackedAnswers;
+import cnpmnc.assignment.util.SingleFlight;
+import cnpmnc.assignment.util.constant.Answer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+// Per-question difficulty, discrimination and distractor counts of a test. Completed submissions are read once
+// as columns: a score array plus, per question of the current answer key, the selected choice of every row,
+// a bitset of the rows that answered it correctly and one of the rows whose answer sheet contained it.
+// Results are cached until the test gets a new score.
+@Service
+@RequiredArgsConstructor
+public class ItemAnalysisService implements MetricsSource {
+
+    // Share of submissions in the upper and the lower group
+    private static final double GROUP_FRACTION = 0.27;
+
+    // Distractor matrix layout: [question][group][option], blank counted as the last option
+    private static final int OPTIONS = Answer.values().length + 1;
+    private static final int GROUPS = 3;
+    private static final int ALL = 0;
+    private static final int UPPER = 1;
+    private static final int LOWER = 2;
+
+    private final AnswerKeyCache answerKeyCache;
+    private final AnswerLayoutStore answerLayoutStore;
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Map<String, Analysis> analyses = new ConcurrentHashMap<>();
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    private final SingleFlight<String, Analysis> loads = new SingleFlight<>();
+
+    public ItemAnalysisDTO get(String testId) {
+        return analysis(testId).items;
+    }
+
+    public DistractorAnalysisDTO getDistractors(String testId) {
+        Analysis analysis = analysis(testId);
+        AnswerKey answerKey = analysis.answerKey;
+        Answer[] answers = Answer.values();
+        List<DistractorAnalysisDTO.Question> questions = new ArrayList<>(answerKey.size());
+        for (int k = 0; k < answerKey.size(); k++) {
+            List<DistractorAnalysisDTO.Option> options = new ArrayList<>(OPTIONS);
+            for (int option = 0; option < OPTIONS; option++) {
+                int cell = (k * GROUPS) * OPTIONS + option;
+                options.add(new DistractorAnalysisDTO.Option(
+                        option < answers.length ? answers[option].name() : "BLANK",
+                        analysis.distractors[cell + ALL * OPTIONS],
+                        analysis.distractors[cell + UPPER * OPTIONS],
+                        analysis.distractors[cell + LOWER * OPTIONS]));
+            }
+            byte correct = answerKey.getCorrect()[k];
+            questions.add(new DistractorAnalysisDTO.Question(
+                    answerKey.questionId(k), k + 1,
+                    correct >= 0 && correct < answers.length ? answers[correct].name() : null,
+                    options));
+        }
+        ItemAnalysisDTO items = analysis.items;
+        return new DistractorAnalysisDTO(items.getTestId(), items.getSubmissions(), analysis.groupSize,
+                items.getComputedAt(), questions);
+    }
+
+    public void invalidate(String testId) {
+        AfterCommit.run(() -> analyses.compute(testId, (id, existing) -> {
+            versions.merge(id, 1L, Long::sum);
+            return null;
+        }));
+    }
+
+    @Override
+    public String metricsName() {
+        return "itemAnalysis";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        return Map.of(
+                "cachedTests", analyses.size(),
+                "loads", loads.stats()
+        );
+    }
+
+    private Analysis analysis(String testId) {
+        Analysis analysis = analyses.get(testId);
+        if (analysis == null) {
+            analysis = loads.load(testId, () -> compute(testId));
+        }
+        return analysis;
+    }
+
+    private Analysis compute(String testId) {
+        long version = versions.getOrDefault(testId, 0L);
+        AnswerKey answerKey = answerKeyCache.get(testId);
+        Columns columns = new Columns(answerKey.size());
+
+        // Packed submissions: the bitmap is indexed by the layout, mapped once per layout onto the key
+        Map<String, int[]> keyIndexesByLayout = new HashMap<>();
+        jdbcTemplate.query(
+                "SELECT layout_id, correct_bitmap, score, packed_answers FROM submissions " +
+                        "WHERE test_id = ? AND status = 'COMPLETED' AND correct_bitmap IS NOT NULL",
+                (RowCallbackHandler) rs -> {
+                    int[] keyIndexes = keyIndexesByLayout.computeIfAbsent(rs.getString(1), layoutId -> {
+                        String[] questionIds = answerLayoutStore.questionIds(layoutId);
+                        int[] indexes = new int[questionIds.length];
+                        for (int i = 0; i < questionIds.length; i++) {
+                            indexes[i] = answerKey.indexOf(questionIds[i]);
+                        }
+                        return indexes;
+                    });
+                    byte[] bitmap = rs.getBytes(2);
+                    byte[] packed = rs.getBytes(4);
+                    int row = columns.addRow(rs.getDouble(3));
+                    for (int i = 0; i < keyIndexes.length; i++) {
+                        if (keyIndexes[i] >= 0) {
+                            columns.answered[keyIndexes[i]].set(row);
+                            columns.selected[keyIndexes[i]][row] = packed != null
+                                    ? PackedAnswers.selectionAt(packed, i) : AnswerKey.BLANK;
+                            if (PackedAnswers.bitAt(bitmap, i)) {
+                                columns.correct[keyIndexes[i]].set(row);
+                            }
+                        }
+                    }
+                },
+                testId);
+
+        // Submissions not yet folded into the packed columns by PackedAnswerMigration
+        String[] previous = new String[1];
+        int[] row = new int[1];
+        jdbcTemplate.query(
+                "SELECT a.submission_id, a.question_id, a.is_correct, s.score, a.selected_answer FROM submission_answers a " +
+                        "JOIN submissions s ON s.id = a.submission_id " +
+                        "WHERE s.test_id = ? AND s.status = 'COMPLETED' AND s.correct_bitmap IS NULL " +
+                        "ORDER BY a.submission_id",
+                (RowCallbackHandler) rs -> {
+                    String submissionId = rs.getString(1);
+                    if (!submissionId.equals(previous[0])) {
+                        previous[0] = submissionId;
+                        row[0] = columns.addRow(rs.getDouble(4));
+                    }
+                    int keyIndex = answerKey.indexOf(rs.getString(2));
+                    if (keyIndex >= 0) {
+                        columns.answered[keyIndex].set(row[0]);
+                        columns.selected[keyIndex][row[0]] = AnswerKey.ordinalOf(rs.getString(5));
+                        if (rs.getBoolean(3)) {
+                            columns.correct[keyIndex].set(row[0]);
+                        }
+                    }
+                },
+                testId);
+
+        Analysis analysis = analyse(testId, answerKey, columns);
+        // A score committed while reading may be missing, so keep the result local
+        analyses.compute(testId, (id, existing) ->
+                existing == null && versions.getOrDefault(id, 0L) == version ? analysis : existing);
+        return analysis;
+    }
+
+    private static Analysis analyse(String testId, AnswerKey answerKey, Columns columns) {
+        int rows = columns.rows;
+        double[] scores = Arrays.copyOf(columns.scores, rows);
+
+        // Upper and lower groups by total score; ties at the boundary are split by submission order
+        int groupSize = rows > 0 ? Math.max(1, (int) Math.round(rows * GROUP_FRACTION)) : 0;
+        int[] byScore = IntStream.range(0, rows).boxed()
+                .sorted(Comparator.comparingDouble(r -> scores[r]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        BitSet lower = new BitSet(rows);
+        BitSet upper = new BitSet(rows);
+        for (int i = 0; i < groupSize; i++) {
+            lower.set(byScore[i]);
+            upper.set(byScore[rows - 1 - i]);
+        }
+
+        List<ItemAnalysisDTO.Item> items = new ArrayList<>(answerKey.size());
+        int[] distractors = new int[answerKey.size() * GROUPS * OPTIONS];
+        for (int k = 0; k < answerKey.size(); k++) {
+            BitSet answered = columns.answered[k];
+            BitSet correct = columns.correct[k];
+            long n = answered.cardinality();
+            long c = correct.cardinality();
+
+            byte[] selected = columns.selected[k];
+            int base = k * GROUPS * OPTIONS;
+            for (int r = answered.nextSetBit(0); r >= 0; r = answered.nextSetBit(r + 1)) {
+                int option = selected[r] >= 0 && selected[r] < OPTIONS - 1 ? selected[r] : OPTIONS - 1;
+                distractors[base + ALL * OPTIONS + option]++;
+                if (upper.get(r)) {
+                    distractors[base + UPPER * OPTIONS + option]++;
+                } else if (lower.get(r)) {
+                    distractors[base + LOWER * OPTIONS + option]++;
+                }
+            }
+
+            double sum = 0;
+            double sumOfSquares = 0;
+            for (int r = answered.nextSetBit(0); r >= 0; r = answered.nextSetBit(r + 1)) {
+                sum += scores[r];
+                sumOfSquares += scores[r] * scores[r];
+            }
+            double correctSum = 0;
+            for (int r = correct.nextSetBit(0); r >= 0; r = correct.nextSetBit(r + 1)) {
+                correctSum += scores[r];
+            }
+
+            Double pValue = n > 0 ? (double) c / n : null;
+            items.add(new ItemAnalysisDTO.Item(
+                    answerKey.questionId(k),
+                    k + 1,
+                    n,
+                    pValue,
+                    pointBiserial(n, c, sum, sumOfSquares, correctSum),
+                    discrimination(answered, correct, upper, lower)));
+        }
+        ItemAnalysisDTO itemAnalysis = new ItemAnalysisDTO(testId, rows, LocalDateTime.now(), items);
+        return new Analysis(answerKey, itemAnalysis, distractors, groupSize);
+    }
+
+    // Corrected point-biserial: the item's own points are taken out of the total, so it does not correlate with itself
+    private static Double pointBiserial(long n, long c, double sum, double sumOfSquares, double correctSum) {
+        if (n == 0 || c == 0 || c == n) {
+            return null;
+        }
+        double points = SubmissionService.POINTS_PER_QUESTION;
+        double restSum = sum - points * c;
+        double restSumOfSquares = sumOfSquares - 2 * points * correctSum + points * points * c;
+        double mean = restSum / n;
+        double variance = restSumOfSquares / n - mean * mean;
+        if (variance <= 0) {
+            return null;
+        }
+        double p = (double) c / n;
+        double meanCorrect = (correctSum - points * c) / c;
+        double meanIncorrect = (restSum - (correctSum - points * c)) / (n - c);
+        return (meanCorrect - meanIncorrect) / Math.sqrt(variance) * Math.sqrt(p * (1 - p));
+    }
+
+    private static Double discrimination(BitSet answered, BitSet correct, BitSet upper, BitSet lower) {
+        long upperAnswered = countBoth(answered, upper);
+        long lowerAnswered = countBoth(answered, lower);
+        if (upperAnswered == 0 || lowerAnswered == 0) {
+            return null;
+        }
+        return (double) countBoth(correct, upper) / upperAnswered - (double) countBoth(correct, lower) / lowerAnswered;
+    }
+
+    private static long countBoth(BitSet a, BitSet b) {
+        BitSet both = (BitSet) a.clone();
+        both.and(b);
+        return both.cardinality();
+    }
+
+    private static final class Analysis {
+        private final AnswerKey answerKey;
+        private final ItemAnalysisDTO items;
+        private final int[] distractors;
+        private final int groupSize;
+
+        private Analysis(AnswerKey answerKey, ItemAnalysisDTO items, int[] distractors, int groupSize) {
+            this.answerKey = answerKey;
+            this.items = items;
+            this.distractors = distractors;
+            this.groupSize = groupSize;
+        }
+    }
+
+    private static final class Columns {
+        private final BitSet[] correct;
+        private final BitSet[] answered;
+        private final byte[][] selected;
+        private double[] scores = new double[256];
+        private int rows;
+
+        private Columns(int questions) {
+            correct = new BitSet[questions];
+            answered = new BitSet[questions];
+            selected = new byte[questions][scores.length];
+            for (int i = 0; i < questions; i++) {
+                correct[i] = new BitSet();
+                answered[i] = new BitSet();
+            }
+        }
+
+        private int addRow(double score) {
+            if (rows == scores.length) {
+                scores = Arrays.copyOf(scores, rows * 2);
+                for (int i = 0; i < selected.length; i++) {
+                    selected[i] = Arrays.copyOf(selected[i], rows * 2);
+                }
+            }
+            scores[rows] = score;
+            return rows++;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package cnpmnc.assignment.service;
+
+import cnpmnc.assignment.util.MetricsSource;
+
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Moves submissions written before packed answers existed onto the packed columns, a chunk at a time
+@Component
+@RequiredArgsConstructor
+public class PackedAnswerMigration implements MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(PackedAnswerMigration.class);
+
+    private final SubmissionService submissionService;
+
+    @Value("${submission.packed-migration.chunk-size:200}")
+    private int chunkSize;
+
+    @Value("${submission.packed-migration.chunks-per-run:25}")
+    private int chunksPerRun;
+
+    // The submission_answers rows stay as a fallback unless this is switched on explicitly
+    @Value("${submission.packed-migration.delete-legacy-rows:false}")
+    private boolean deleteLegacyRows;
+
+    private final AtomicLong migrated = new AtomicLong();
+    private volatile boolean done;
+
+    @Scheduled(fixedDelayString = "${submission.packed-migration.interval-ms:60000}",
+               initialDelayString = "${submission.packed-migration.initial-delay-ms:20000}")
+    public void migrate() {
+        if (done) {
+            return;
+        }
+        try {
+            for (int i = 0; i < chunksPerRun; i++) {
+                int count = submissionService.migrateLegacyAnswers(chunkSize, deleteLegacyRows);
+                migrated.addAndGet(count);
+                if (count == 0) {
+                    done = true;
+                    logger.info("Packed answer migration finished, {} submissions migrated", migrated.get());
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.error("Packed answer migration failed, retrying on the next run", e);
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "packedAnswerMigration";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        return Map.of(
+                "migrated", migrated.get(),
+                "done", done
+        );
+    }
+}
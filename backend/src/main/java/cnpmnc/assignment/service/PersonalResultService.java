@@ -0,0 +1,175 @@
+package cnpmnc.assignment.service;
+
+import cnpmnc.assignment.cache.AnswerLayoutStore;
+import cnpmnc.assignment.dto.ApiResponse;
+import cnpmnc.assignment.dto.QuestionResultDto;
+import cnpmnc.assignment.dto.SubmissionResponseDto;
+import cnpmnc.assignment.util.AfterCommit;
+import cnpmnc.assignment.util.MetricsSource;
+import cnpmnc.assignment.util.PackedAnswers;
+import cnpmnc.assignment.util.constant.Answer;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A student's result for a test, with the selected and correct answer of every question, read with one query
+// joining their submission to the test's questions and, for submissions not yet packed, their own answer rows.
+// The id may be the test's or the submission's; either way only the student's own submission matches.
+// A graded submission only changes when the test is regraded or its questions are edited, so the serialized
+// response is kept until then and written to the client as-is.
+@Service
+@RequiredArgsConstructor
+public class PersonalResultService implements MetricsSource {
+
+    private static final String RESULT_SQL =
+            "SELECT s.status, s.score, s.max_score, s.correct_count, s.layout_id, s.packed_answers, " +
+                    "q.id, q.content, q.answer, a.selected_answer, s.test_id " +
+                    "FROM submissions s " +
+                    "LEFT JOIN questions q ON q.test_id = s.test_id " +
+                    "LEFT JOIN submission_answers a ON s.packed_answers IS NULL " +
+                    "AND a.submission_id = s.id AND a.question_id = q.id " +
+                    "WHERE s.student_id = ? AND (s.id = ? OR s.test_id = ?) " +
+                    "ORDER BY q.id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AnswerLayoutStore answerLayoutStore;
+    private final ObjectMapper objectMapper;
+
+    @Value("${results.personal.max-cached:20000}")
+    private int maxCached;
+
+    // "studentId|id" -> response body, and the keys cached per test so a regrade can drop them
+    private final Map<String, byte[]> results = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> keysByTest = new ConcurrentHashMap<>();
+    // Bumped by every invalidation; the test of an id is only known once loaded, so loads compare against this
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public byte[] get(String id, String studentId) {
+        String key = studentId + "|" + id;
+        byte[] body = results.get(key);
+        if (body != null) {
+            hits.incrementAndGet();
+            return body;
+        }
+        misses.incrementAndGet();
+        long generationBefore = generation.get();
+        Result result = load(id, studentId);
+        byte[] loaded = serialize(ApiResponse.success(result.response, "Personal result retrieved"));
+        // Not kept if the test was invalidated while loading; past the cap results are served uncached
+        keysByTest.compute(result.testId, (testId, keys) -> {
+            if (generation.get() != generationBefore || results.size() >= maxCached) {
+                return keys;
+            }
+            Set<String> updated = keys != null ? keys : ConcurrentHashMap.newKeySet();
+            updated.add(key);
+            results.put(key, loaded);
+            return updated;
+        });
+        return loaded;
+    }
+
+    public void invalidate(String testId) {
+        AfterCommit.run(() -> keysByTest.compute(testId, (id, keys) -> {
+            generation.incrementAndGet();
+            if (keys != null) {
+                keys.forEach(results::remove);
+            }
+            return null;
+        }));
+    }
+
+    @Override
+    public String metricsName() {
+        return "personalResults";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        return Map.of(
+                "cachedResults", results.size(),
+                "hits", hits.get(),
+                "misses", misses.get()
+        );
+    }
+
+    private Result load(String id, String studentId) {
+        List<QuestionResultDto> questions = new ArrayList<>();
+        Object[] submission = new Object[5];
+        Map<String, Integer> layoutIndexes = new HashMap<>();
+        jdbcTemplate.query(RESULT_SQL, (RowCallbackHandler) rs -> {
+            if (submission[0] == null) {
+                submission[0] = rs.getString(1);
+                submission[1] = rs.getDouble(2);
+                submission[2] = rs.getDouble(3);
+                submission[3] = rs.getObject(4) != null ? rs.getInt(4) : null;
+                submission[4] = rs.getString(11);
+                String layoutId = rs.getString(5);
+                if (layoutId != null && rs.getBytes(6) != null) {
+                    String[] questionIds = answerLayoutStore.questionIds(layoutId);
+                    for (int i = 0; i < questionIds.length; i++) {
+                        layoutIndexes.put(questionIds[i], i);
+                    }
+                }
+            }
+            String questionId = rs.getString(7);
+            if (questionId == null) {
+                return;
+            }
+            String selected = rs.getString(10);
+            byte[] packed = rs.getBytes(6);
+            Integer index = layoutIndexes.get(questionId);
+            if (packed != null && index != null) {
+                byte choice = PackedAnswers.selectionAt(packed, index);
+                selected = choice != PackedAnswers.BLANK ? Answer.values()[choice].name() : null;
+            }
+            questions.add(new QuestionResultDto(questionId, rs.getString(8), selected, rs.getString(9)));
+        }, studentId, id, id);
+
+        if (submission[0] == null) {
+            throw new IllegalArgumentException("Result not found");
+        }
+        if (!"COMPLETED".equals(submission[0])) {
+            throw new IllegalArgumentException("Submission has not been graded yet");
+        }
+        double score = (Double) submission[1];
+        double maxScore = (Double) submission[2];
+        int correctCount = submission[3] != null
+                ? (Integer) submission[3]
+                : (int) Math.round(score / SubmissionService.POINTS_PER_QUESTION);
+        int totalQuestions = (int) Math.round(maxScore / SubmissionService.POINTS_PER_QUESTION);
+        return new Result((String) submission[4],
+                new SubmissionResponseDto(score, correctCount, totalQuestions - correctCount, questions));
+    }
+
+    private byte[] serialize(Object body) {
+        try {
+            return objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize personal result", e);
+        }
+    }
+
+    private static final class Result {
+        private final String testId;
+        private final SubmissionResponseDto response;
+
+        private Result(String testId, SubmissionResponseDto response) {
+            this.testId = testId;
+            this.response = response;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package cnpmnc.assignment.service;
+
+import cnpmnc.assignment.cache.AnswerKey;
+import cnpmnc.assignment.cache.AnswerKeyCache;
+import cnpmnc.assignment.cache.AnswerLayoutStore;
+import cnpmnc.assignment.cache.LeaderboardCache;
+import cnpmnc.assignment.cache.ScoreDistributionCache;
+import cnpmnc.assignment.cache.TestStatsRegistry;
+import cnpmnc.assignment.util.PackedAnswers;
+import cnpmnc.assignment.util.constant.Answer;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Re-scores the submissions of a test against its current answer key in the background.
+// Packed submissions are read in keyset-ordered chunks and only rows whose result changed are written back;
+// legacy submission_answers rows are fixed with two set-based statements.
+@Service
+@RequiredArgsConstructor
+public class RegradeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RegradeService.class);
+
+    private final AnswerKeyCache answerKeyCache;
+    private final AnswerLayoutStore answerLayoutStore;
+    private final JdbcTemplate jdbcTemplate;
+    private final TestStatsRegistry testStatsRegistry;
+    private final ScoreDistributionCache scoreDistributionCache;
+    private final ItemAnalysisService itemAnalysisService;
+    private final LeaderboardCache leaderboardCache;
+    private final PersonalResultService personalResultService;
+
+    @Value("${submission.regrade.chunk-size:500}")
+    private int chunkSize;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "submission-regrader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Repeated requests while a regrade of the test is queued collapse into that run;
+    // a request during a run queues exactly one more
+    public void schedule(String testId) {
+        boolean[] created = new boolean[1];
+        Job job = jobs.compute(testId, (id, existing) -> {
+            if (existing != null && existing.state == State.QUEUED) {
+                return existing;
+            }
+            created[0] = true;
+            return new Job(id);
+        });
+        if (created[0]) {
+            executor.submit(() -> run(job));
+        }
+    }
+
+    public Map<String, Object> getStatus(String testId) {
+        Job job = jobs.get(testId);
+        return job != null ? job.toMap() : Map.of("state", "NONE");
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    private void run(Job job) {
+        job.state = State.RUNNING;
+        job.startedAt = LocalDateTime.now();
+        try {
+            AnswerKey answerKey = answerKeyCache.get(job.testId);
+            long[] counts = countSubmissions(job.testId);
+            job.total = counts[0];
+            int legacyUpdated = regradeLegacy(job.testId, answerKey);
+            // Legacy rows are all checked by the set-based statements at once
+            job.processed += counts[1];
+            job.updated += legacyUpdated;
+            if (legacyUpdated > 0) {
+                // Rewritten set-based, so the changed rows are not known one by one
+                leaderboardCache.invalidate(job.testId);
+            }
+            regradePacked(job, answerKey);
+            job.state = State.DONE;
+            logger.info("Regraded test {}: {} submissions checked, {} changed", job.testId, job.processed, job.updated);
+        } catch (RuntimeException e) {
+            job.state = State.FAILED;
+            job.error = e.getMessage();
+            // A chunk may have been written without its leaderboard updates
+            leaderboardCache.invalidate(job.testId);
+            logger.error("Regrade of test {} failed", job.testId, e);
+        } finally {
+            // Scores changed even if the run failed part-way
+            testStatsRegistry.invalidate(job.testId);
+            scoreDistributionCache.invalidate(job.testId);
+            itemAnalysisService.invalidate(job.testId);
+            personalResultService.invalidate(job.testId);
+            job.finishedAt = LocalDateTime.now();
+        }
+    }
+
+    // All completed submissions, and how many of them are still legacy rows
+    private long[] countSubmissions(String testId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT COUNT(*), COUNT(*) FILTER (WHERE packed_answers IS NULL) FROM submissions " +
+                        "WHERE test_id = ? AND status = 'COMPLETED'",
+                (rs, rowNum) -> new long[]{rs.getLong(1), rs.getLong(2)}, testId);
+    }
+
+    private void regradePacked(Job job, AnswerKey answerKey) {
+        String after = "";
+        while (true) {
+            List<Object[]> rows = jdbcTemplate.query(
+                    "SELECT id, layout_id, packed_answers, correct_bitmap, student_id, score, max_score FROM submissions " +
+                            "WHERE test_id = ? AND status = 'COMPLETED' AND packed_answers IS NOT NULL AND id > ? " +
+                            "ORDER BY id LIMIT ?",
+                    (rs, rowNum) -> new Object[]{
+                            rs.getString(1), rs.getString(2), rs.getBytes(3), rs.getBytes(4), rs.getString(5),
+                            rs.getDouble(6), rs.getDouble(7)
+                    },
+                    job.testId, after, chunkSize);
+            if (rows.isEmpty()) {
+                return;
+            }
+
+            List<Object[]> updates = new ArrayList<>();
+            List<Object[]> rescored = new ArrayList<>();
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            for (Object[] row : rows) {
+                String[] questionIds = answerLayoutStore.questionIds((String) row[1]);
+                byte[] packed = (byte[]) row[2];
+                BitSet correct = new BitSet(questionIds.length);
+                // Questions deleted since the submission no longer count towards the maximum
+                int graded = 0;
+                for (int i = 0; i < questionIds.length; i++) {
+                    int keyIndex = answerKey.indexOf(questionIds[i]);
+                    if (keyIndex >= 0) {
+                        graded++;
+                        correct.set(i, answerKey.isCorrect(keyIndex, PackedAnswers.selectionAt(packed, i)));
+                    }
+                }
+                byte[] bitmap = PackedAnswers.packBits(correct);
+                double score = correct.cardinality() * SubmissionService.POINTS_PER_QUESTION;
+                double maxScore = graded * SubmissionService.POINTS_PER_QUESTION;
+                if (!Arrays.equals(bitmap, (byte[]) row[3]) || score != (Double) row[5] || maxScore != (Double) row[6]) {
+                    updates.add(new Object[]{bitmap, correct.cardinality(), score, maxScore, now, row[0]});
+                    rescored.add(new Object[]{row[4], score});
+                }
+            }
+            // Each chunk is its own short statement batch; no transaction spans the whole test
+            jdbcTemplate.batchUpdate(
+                    "UPDATE submissions SET correct_bitmap = ?, correct_count = ?, score = ?, max_score = ?, updated_at = ? " +
+                            "WHERE id = ?",
+                    updates);
+            for (Object[] score : rescored) {
+                leaderboardCache.rescore(job.testId, (String) score[0], (Double) score[1]);
+            }
+            job.processed += rows.size();
+            job.updated += updates.size();
+            after = (String) rows.get(rows.size() - 1)[0];
+        }
+    }
+
+    // Submissions not yet moved to packed answers still have one row per question
+    private int regradeLegacy(String testId, AnswerKey answerKey) {
+        for (int i = 0; i < answerKey.size(); i++) {
+            byte correct = answerKey.getCorrect()[i];
+            String correctAnswer = correct == AnswerKey.BLANK ? null : Answer.values()[correct].name();
+            jdbcTemplate.update(
+                    "UPDATE submission_answers SET is_correct = COALESCE(selected_answer = ?, FALSE), " +
+                            "points_earned = CASE WHEN selected_answer = ? THEN ? ELSE 0 END " +
+                            "WHERE question_id = ? AND is_correct <> COALESCE(selected_answer = ?, FALSE)",
+                    correctAnswer, correctAnswer, SubmissionService.POINTS_PER_QUESTION, answerKey.questionId(i), correctAnswer);
+        }
+        return jdbcTemplate.update(
+                "UPDATE submissions s SET score = t.score, max_score = t.max_score, updated_at = ? " +
+                        "FROM (SELECT a.submission_id, SUM(a.points_earned) AS score, COUNT(*) * ? AS max_score " +
+                        "      FROM submission_answers a JOIN submissions x ON x.id = a.submission_id " +
+                        "      WHERE x.test_id = ? GROUP BY a.submission_id) t " +
+                        "WHERE t.submission_id = s.id AND s.packed_answers IS NULL " +
+                        "AND (s.score <> t.score OR s.max_score <> t.max_score)",
+                Timestamp.valueOf(LocalDateTime.now()), SubmissionService.POINTS_PER_QUESTION, testId);
+    }
+
+    private enum State { QUEUED, RUNNING, DONE, FAILED }
+
+    private static final class Job {
+        private final String testId;
+        private final LocalDateTime requestedAt = LocalDateTime.now();
+        private volatile State state = State.QUEUED;
+        private volatile long total;
+        private volatile long processed;
+        private volatile long updated;
+        private volatile LocalDateTime startedAt;
+        private volatile LocalDateTime finishedAt;
+        private volatile String error;
+
+        private Job(String testId) {
+            this.testId = testId;
+        }
+
+        private Map<String, Object> toMap() {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("testId", testId);
+            status.put("state", state.name());
+            status.put("total", total);
+            status.put("processed", processed);
+            status.put("updated", updated);
+            status.put("requestedAt", requestedAt);
+            status.put("startedAt", startedAt);
+            status.put("finishedAt", finishedAt);
+            if (error != null) {
+                status.put("error", error);
+            }
+            return status;
+        }
+    }
+}
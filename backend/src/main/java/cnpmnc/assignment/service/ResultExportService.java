@@ -0,0 +1,312 @@
+package cnpmnc.assignment.service;
+
+import cnpmnc.assignment.cache.AnswerKey;
+import cnpmnc.assignment.cache.AnswerKeyCache;
+import cnpmnc.assignment.cache.AnswerLayoutStore;
+import cnpmnc.assignment.model.User;
+import cnpmnc.assignment.util.CsvWriter;
+import cnpmnc.assignment.util.MetricsSource;
+import cnpmnc.assignment.util.PackedAnswers;
+import cnpmnc.assignment.util.constant.Answer;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Exports the submissions of a test with one answer per question of its current key. Rows are read through a
+// forward-only cursor (PostgreSQL only honours the fetch size inside a transaction) and written as they arrive,
+// so memory stays flat however large the test is. Each export holds a pooled connection while the client
+// downloads, hence the cap on concurrent exports.
+@Service
+@RequiredArgsConstructor
+public class ResultExportService implements MetricsSource {
+
+    private static final String SUBMISSION_COLUMNS =
+            "s.id, u.id, u.email, u.student_id, s.status, s.score, s.max_score, s.submitted_at, s.completion_time";
+
+    // Packed submissions, and those with no answers at all (not graded yet)
+    private static final String PACKED_SQL =
+            "SELECT " + SUBMISSION_COLUMNS + ", s.layout_id, s.packed_answers, s.correct_bitmap " +
+                    "FROM submissions s JOIN users u ON u.id = s.student_id " +
+                    "WHERE s.test_id = ? AND (s.packed_answers IS NOT NULL " +
+                    "OR NOT EXISTS (SELECT 1 FROM submission_answers a WHERE a.submission_id = s.id)) " +
+                    "ORDER BY s.submitted_at, s.id";
+
+    // Submissions not yet folded into the packed columns, one row per answer
+    private static final String LEGACY_SQL =
+            "SELECT " + SUBMISSION_COLUMNS + ", a.question_id, a.selected_answer, a.is_correct " +
+                    "FROM submissions s JOIN users u ON u.id = s.student_id " +
+                    "JOIN submission_answers a ON a.submission_id = s.id " +
+                    "WHERE s.test_id = ? AND s.packed_answers IS NULL " +
+                    "ORDER BY s.id";
+
+    private final TestService testService;
+    private final AnswerKeyCache answerKeyCache;
+    private final AnswerLayoutStore answerLayoutStore;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectMapper objectMapper;
+
+    @Value("${export.fetch-size:500}")
+    private int fetchSize;
+
+    @Value("${export.max-concurrent:1}")
+    private int maxConcurrent;
+
+    private Semaphore permits;
+    private final AtomicLong exports = new AtomicLong();
+    private final AtomicLong rowsExported = new AtomicLong();
+
+    public enum Format { CSV, NDJSON }
+
+    @PostConstruct
+    public void init() {
+        permits = new Semaphore(maxConcurrent);
+    }
+
+    // Authorization and the concurrency permit are settled here, before the response is committed
+    public StreamingResponseBody export(String classId, String testId, Format format, User currentUser) {
+        testService.checkTeacherOfTest(classId, testId, currentUser);
+        AnswerKey answerKey = answerKeyCache.get(testId);
+        if (!permits.tryAcquire()) {
+            throw new IllegalStateException("Another export is running, please retry shortly");
+        }
+        exports.incrementAndGet();
+        return out -> {
+            try {
+                RowWriter writer = format == Format.CSV ? new CsvRowWriter(out, answerKey) : new JsonRowWriter(out, answerKey);
+                TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+                transaction.setReadOnly(true);
+                transaction.executeWithoutResult(status -> stream(testId, answerKey, writer));
+                writer.finish();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                permits.release();
+            }
+        };
+    }
+
+    @Override
+    public String metricsName() {
+        return "resultExports";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        return Map.of(
+                "exports", exports.get(),
+                "running", maxConcurrent - permits.availablePermits(),
+                "rowsExported", rowsExported.get()
+        );
+    }
+
+    private void stream(String testId, AnswerKey answerKey, RowWriter writer) {
+        Map<String, int[]> keyIndexesByLayout = new HashMap<>();
+        query(PACKED_SQL, testId, rs -> {
+            ExportRow row = new ExportRow(rs, answerKey.size());
+            String layoutId = rs.getString(10);
+            byte[] packed = rs.getBytes(11);
+            byte[] bitmap = rs.getBytes(12);
+            if (layoutId != null && packed != null) {
+                int[] keyIndexes = keyIndexesByLayout.computeIfAbsent(layoutId,
+                        id -> keyIndexes(answerKey, answerLayoutStore.questionIds(id)));
+                for (int i = 0; i < keyIndexes.length; i++) {
+                    if (keyIndexes[i] >= 0) {
+                        row.selected[keyIndexes[i]] = PackedAnswers.selectionAt(packed, i);
+                        row.correct.set(keyIndexes[i], PackedAnswers.bitAt(bitmap, i));
+                    }
+                }
+            }
+            write(writer, row);
+        });
+
+        ExportRow[] current = new ExportRow[1];
+        query(LEGACY_SQL, testId, rs -> {
+            if (current[0] == null || !current[0].submissionId.equals(rs.getString(1))) {
+                if (current[0] != null) {
+                    write(writer, current[0]);
+                }
+                current[0] = new ExportRow(rs, answerKey.size());
+            }
+            int keyIndex = answerKey.indexOf(rs.getString(10));
+            if (keyIndex >= 0) {
+                current[0].selected[keyIndex] = AnswerKey.ordinalOf(rs.getString(11));
+                current[0].correct.set(keyIndex, rs.getBoolean(12));
+            }
+        });
+        if (current[0] != null) {
+            write(writer, current[0]);
+        }
+    }
+
+    private static int[] keyIndexes(AnswerKey answerKey, String[] questionIds) {
+        int[] indexes = new int[questionIds.length];
+        for (int i = 0; i < questionIds.length; i++) {
+            indexes[i] = answerKey.indexOf(questionIds[i]);
+        }
+        return indexes;
+    }
+
+    private void query(String sql, String testId, RowCallbackHandler handler) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            statement.setString(1, testId);
+            return statement;
+        }, handler);
+    }
+
+    private void write(RowWriter writer, ExportRow row) {
+        try {
+            writer.write(row);
+        } catch (IOException e) {
+            // Client went away; unwound out of the transaction and rethrown as the IOException
+            throw new UncheckedIOException(e);
+        }
+        rowsExported.incrementAndGet();
+    }
+
+    private static String answerName(byte selected) {
+        Answer[] answers = Answer.values();
+        return selected >= 0 && selected < answers.length ? answers[selected].name() : null;
+    }
+
+    private static final class ExportRow {
+        private final String submissionId;
+        private final String studentId;
+        private final String email;
+        private final String studentCode;
+        private final String status;
+        private final Double score;
+        private final Double maxScore;
+        private final Timestamp submittedAt;
+        private final Integer completionTime;
+        // Per question of the key; BLANK when unanswered or not on the student's sheet
+        private final byte[] selected;
+        private final BitSet correct;
+
+        private ExportRow(ResultSet rs, int questions) throws SQLException {
+            submissionId = rs.getString(1);
+            studentId = rs.getString(2);
+            email = rs.getString(3);
+            studentCode = rs.getString(4);
+            status = rs.getString(5);
+            score = rs.getObject(6) != null ? rs.getDouble(6) : null;
+            maxScore = rs.getObject(7) != null ? rs.getDouble(7) : null;
+            submittedAt = rs.getTimestamp(8);
+            completionTime = rs.getObject(9) != null ? rs.getInt(9) : null;
+            selected = new byte[questions];
+            Arrays.fill(selected, AnswerKey.BLANK);
+            correct = new BitSet(questions);
+        }
+    }
+
+    private interface RowWriter {
+        void write(ExportRow row) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    private static final class CsvRowWriter implements RowWriter {
+        private final CsvWriter csv;
+        private final Object[] line;
+
+        private CsvRowWriter(OutputStream out, AnswerKey answerKey) throws IOException {
+            this.csv = new CsvWriter(out);
+            this.line = new Object[9 + answerKey.size()];
+            Object[] header = new Object[line.length];
+            System.arraycopy(new Object[]{"Submission ID", "Student ID", "Email", "Student code", "Status", "Score",
+                    "Max score", "Submitted at", "Completion time (min)"}, 0, header, 0, 9);
+            for (int k = 0; k < answerKey.size(); k++) {
+                header[9 + k] = "Q" + (k + 1);
+            }
+            csv.row(header);
+        }
+
+        @Override
+        public void write(ExportRow row) throws IOException {
+            line[0] = row.submissionId;
+            line[1] = row.studentId;
+            line[2] = row.email;
+            line[3] = row.studentCode;
+            line[4] = row.status;
+            line[5] = row.score;
+            line[6] = row.maxScore;
+            line[7] = row.submittedAt != null ? row.submittedAt.toLocalDateTime() : null;
+            line[8] = row.completionTime;
+            for (int k = 0; k < row.selected.length; k++) {
+                line[9 + k] = answerName(row.selected[k]);
+            }
+            csv.row(line);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            csv.flush();
+        }
+    }
+
+    private final class JsonRowWriter implements RowWriter {
+        private final JsonGenerator json;
+        private final AnswerKey answerKey;
+
+        private JsonRowWriter(OutputStream out, AnswerKey answerKey) throws IOException {
+            this.json = objectMapper.getFactory().createGenerator(out);
+            // One object per line; the newline is written after each row instead of Jackson's space separator
+            json.setRootValueSeparator(null);
+            this.answerKey = answerKey;
+        }
+
+        @Override
+        public void write(ExportRow row) throws IOException {
+            json.writeStartObject();
+            json.writeStringField("submissionId", row.submissionId);
+            json.writeStringField("studentId", row.studentId);
+            json.writeStringField("email", row.email);
+            json.writeStringField("studentCode", row.studentCode);
+            json.writeStringField("status", row.status);
+            json.writeObjectField("score", row.score);
+            json.writeObjectField("maxScore", row.maxScore);
+            json.writeStringField("submittedAt", row.submittedAt != null ? row.submittedAt.toLocalDateTime().toString() : null);
+            json.writeObjectField("completionTime", row.completionTime);
+            json.writeArrayFieldStart("answers");
+            for (int k = 0; k < row.selected.length; k++) {
+                json.writeStartObject();
+                json.writeStringField("questionId", answerKey.questionId(k));
+                json.writeStringField("selectedAnswer", answerName(row.selected[k]));
+                json.writeBooleanField("correct", row.correct.get(k));
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+            json.writeRaw('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            json.flush();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package cnpmnc.assignment.service;
+
+import cnpmnc.assignment.util.MetricsSource;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Drains queued submission ids and grades them in batches on a small worker pool.
+// Ids of a failed batch are dropped from the queue and come back with the next sweep of pending rows,
+// so a database hiccup delays grading by one sweep interval instead of until the next restart.
+@Component
+@RequiredArgsConstructor
+public class SubmissionGradingWorker implements MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(SubmissionGradingWorker.class);
+
+    private final SubmissionService submissionService;
+
+    @Value("${submission.async.workers:1}")
+    private int workers;
+
+    @Value("${submission.async.batch-size:50}")
+    private int batchSize;
+
+    private final BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+    // Ids queued or being graded; a sweep only adds the others
+    private final Set<String> tracked = ConcurrentHashMap.newKeySet();
+    private final AtomicLong graded = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong swept = new AtomicLong();
+    private ExecutorService executor;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "submission-grader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workers; i++) {
+            executor.submit(this::drain);
+        }
+        // Submissions accepted before a restart are still IN_PROGRESS in the database
+        try {
+            int requeued = requeuePending();
+            if (requeued > 0) {
+                logger.info("Requeued {} submissions awaiting grading", requeued);
+            }
+        } catch (DataAccessException | TransactionException e) {
+            logger.warn("Could not requeue pending submissions, leaving them to the next sweep: {}", e.getMessage());
+        }
+    }
+
+    // Picks up rows left IN_PROGRESS by a failed batch
+    @Scheduled(fixedDelayString = "${submission.async.sweep-interval-ms:60000}",
+            initialDelayString = "${submission.async.sweep-interval-ms:60000}")
+    public void sweep() {
+        if (executor == null) {
+            return;
+        }
+        int requeued = requeuePending();
+        if (requeued > 0) {
+            swept.addAndGet(requeued);
+            logger.info("Sweep requeued {} submissions awaiting grading", requeued);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public void enqueue(String submissionId) {
+        if (tracked.add(submissionId)) {
+            queue.add(submissionId);
+        }
+    }
+
+    @Override
+    public String metricsName() {
+        return "gradingQueue";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        return Map.of(
+                "queued", queue.size(),
+                "graded", graded.get(),
+                "batches", batches.get(),
+                "failedBatches", failures.get(),
+                "sweptSubmissions", swept.get()
+        );
+    }
+
+    private void drain() {
+        List<String> batch = new ArrayList<>(batchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - 1);
+                graded.addAndGet(submissionService.gradePending(batch));
+                batches.incrementAndGet();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                // Rows stay IN_PROGRESS and are requeued by the next sweep
+                failures.incrementAndGet();
+                logger.error("Failed to grade batch of {} submissions", batch.size(), e);
+                if (batch.size() > 1) {
+                    gradeSeparately(batch);
+                }
+            } finally {
+                batch.forEach(tracked::remove);
+                batch.clear();
+            }
+        }
+    }
+
+    // One bad row must not hold back the rest of its batch on every sweep
+    private void gradeSeparately(List<String> batch) {
+        for (String submissionId : batch) {
+            try {
+                graded.addAndGet(submissionService.gradePending(List.of(submissionId)));
+            } catch (RuntimeException e) {
+                logger.warn("Failed to grade submission {}: {}", submissionId, e.getMessage());
+            }
+        }
+    }
+
+    private int requeuePending() {
+        int requeued = 0;
+        for (String submissionId : submissionService.findPendingIds()) {
+            if (tracked.add(submissionId)) {
+                queue.add(submissionId);
+                requeued++;
+            }
+        }
+        return requeued;
+    }
+}
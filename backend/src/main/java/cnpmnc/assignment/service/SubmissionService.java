@@ -0,0 +1,732 @@
+package cnpmnc.assignment.service;
+
+import cnpmnc.assignment.cache.AnswerKey;
+import cnpmnc.assignment.cache.AnswerKeyCache;
+import cnpmnc.assignment.cache.AnswerLayoutStore;
+import cnpmnc.assignment.cache.ExamPaper;
+import cnpmnc.assignment.cache.ExamPaperCache;
+import cnpmnc.assignment.cache.LeaderboardCache;
+import cnpmnc.assignment.cache.OpenAttemptIndex;
+import cnpmnc.assignment.cache.ScoreDistributionCache;
+import cnpmnc.assignment.cache.TestStatsRegistry;
+import cnpmnc.assignment.config.SqlStatementCounter;
+import cnpmnc.assignment.dto.AnswerDto;
+import cnpmnc.assignment.dto.QuestionResultDto;
+import cnpmnc.assignment.dto.StudentGradeDTO;
+import cnpmnc.assignment.dto.SubmissionRequestDto;
+import cnpmnc.assignment.dto.SubmissionResponseDto;
+import cnpmnc.assignment.model.Submission;
+import cnpmnc.assignment.model.SubmissionAnswer;
+import cnpmnc.assignment.model.Test;
+import cnpmnc.assignment.model.User;
+import cnpmnc.assignment.repository.QuestionRepository;
+import cnpmnc.assignment.repository.SubmissionRepository;
+import cnpmnc.assignment.repository.TestRepository;
+import cnpmnc.assignment.repository.UserRepository;
+import cnpmnc.assignment.util.MetricsSource;
+import cnpmnc.assignment.util.PackedAnswers;
+import cnpmnc.assignment.util.TimeOrderedUuid;
+import cnpmnc.assignment.util.constant.Answer;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+public class SubmissionService implements MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(SubmissionService.class);
+
+    static final double POINTS_PER_QUESTION = 10.0; // Default 10 points per question
+
+    private final QuestionRepository questionRepository;
+    private final SubmissionRepository submissionRepository;
+    private final TestRepository testRepository;
+    private final UserRepository userRepository;
+    private final AnswerKeyCache answerKeyCache;
+    private final AnswerLayoutStore answerLayoutStore;
+    private final ObjectMapper objectMapper;
+    private final JdbcTemplate jdbcTemplate;
+    private final SqlStatementCounter sqlStatementCounter;
+    private final SubmissionWal submissionWal;
+    private final AutosaveService autosaveService;
+    private final TestStatsRegistry testStatsRegistry;
+    private final ScoreDistributionCache scoreDistributionCache;
+    private final ItemAnalysisService itemAnalysisService;
+    private final LeaderboardCache leaderboardCache;
+    private final ExamPaperCache examPaperCache;
+    private final OpenAttemptIndex openAttemptIndex;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${exam.attempt.grace-seconds:30}")
+    private long graceSeconds;
+
+    private final AtomicLong syncSubmissions = new AtomicLong();
+    private final AtomicLong syncStatements = new AtomicLong();
+    private final AtomicLong retriedSubmissions = new AtomicLong();
+
+    public Map<String, Object> submit(SubmissionRequestDto body, User currentUser) {
+        try {
+            return submitToDatabase(body, currentUser);
+        } catch (DataAccessResourceFailureException | CannotCreateTransactionException | QueryTimeoutException e) {
+            return submitToLog(body, currentUser, e);
+        }
+    }
+
+    private Map<String, Object> submitToDatabase(SubmissionRequestDto body, User currentUser) {
+        int statementsBefore = sqlStatementCounter.current();
+        User student = resolveStudent(body.getUserId(), currentUser);
+        Test test = testRepository.findById(body.getTestId())
+                .orElseThrow(() -> new IllegalArgumentException("Test not found"));
+        AnswerKey answerKey = loadAnswerKey(test);
+        try {
+            checkWindow(test);
+        } catch (IllegalArgumentException e) {
+            // Outside the window only the student's own attempt, or a retry of their submission, gets through
+            Submission existing = submissionRepository.findByTestAndStudent(test, student).orElseThrow(() -> e);
+            return submitExisting(existing, test, student, answerKey, body);
+        }
+
+        Grade grade = grade(answerKey, body.getAnswers());
+
+        // Create submission
+        Submission submission = new Submission();
+        submission.setTest(test);
+        submission.setStudent(student);
+        submission.setSubmittedAt(LocalDateTime.now());
+        submission.setStatus(Submission.SubmissionStatus.COMPLETED);
+        submission.setScore(grade.score);
+        submission.setMaxScore(grade.maxScore);
+
+        submission.setLayoutId(answerKey.getLayoutId());
+        submission.setPackedAnswers(grade.packedAnswers());
+        submission.setCorrectBitmap(grade.correctBitmap());
+        submission.setCorrectCount(grade.correctCount);
+        submission.setIdempotencyKey(idempotencyKey(body));
+
+        // One row per submission; answers live in the packed columns
+        Submission savedSubmission;
+        try {
+            savedSubmission = submissionRepository.save(submission);
+        } catch (DataIntegrityViolationException e) {
+            Submission existing = submissionRepository.findByTestAndStudent(test, student).orElseThrow(() -> e);
+            return submitExisting(existing, test, student, answerKey, body);
+        }
+        recordScore(test.getId(), savedSubmission.getId(), student, grade, true, submission.getSubmittedAt());
+        syncSubmissions.incrementAndGet();
+        syncStatements.addAndGet(sqlStatementCounter.current() - statementsBefore);
+        return gradedResponse(savedSubmission.getId(), answerKey, grade);
+    }
+
+    // The student already has a row for the test: complete their open attempt, or answer a retry
+    private Map<String, Object> submitExisting(Submission existing, Test test, User student, AnswerKey answerKey,
+                                               SubmissionRequestDto body) {
+        if (!existing.isOpenAttempt()) {
+            return toResponse(checkRetry(existing, body));
+        }
+        checkDeadline(existing, test);
+        // Answers autosaved during the attempt count unless the submission overrides them
+        Grade grade = grade(answerKey, autosaveService.merge(existing.getId(), existing.getDraftAnswers(), body.getAnswers()));
+        LocalDateTime submittedAt = LocalDateTime.now();
+        Integer completionTime = (int) Duration.between(existing.getStartedAt(), submittedAt).toMinutes();
+        if (writeGrade(existing.getId(), answerKey, grade, idempotencyKey(body), completionTime, submittedAt) == 0) {
+            throw new IllegalArgumentException("Time is up for this test");
+        }
+        autosaveService.discard(existing.getId());
+        recordScore(test.getId(), existing.getId(), student, grade, false, submittedAt);
+        return gradedResponse(existing.getId(), answerKey, grade);
+    }
+
+    // Database unreachable: grade against the cached key and keep the result in the local log until it can be replayed.
+    // The test window and attempt deadline are checked against what is cached; without them nothing is accepted.
+    private Map<String, Object> submitToLog(SubmissionRequestDto body, User currentUser, RuntimeException cause) {
+        AnswerKey answerKey = body.getTestId() != null ? answerKeyCache.getIfPresent(body.getTestId()) : null;
+        ExamPaper paper = body.getTestId() != null ? examPaperCache.get(body.getTestId()) : null;
+        if (!submissionWal.isAvailable() || answerKey == null || answerKey.size() == 0 || paper == null) {
+            throw cause;
+        }
+        if (!currentUser.getId().equals(body.getUserId()) && !currentUser.getEmail().equals(body.getUserId())) {
+            throw new SecurityException("You can only submit your own answers");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (paper.getOpenTime() != null && now.isBefore(paper.getOpenTime())) {
+            throw new IllegalArgumentException("Test is not open yet");
+        }
+        LocalDateTime deadline = openAttemptIndex.deadline(paper.getTestId(), currentUser.getId());
+        if (deadline == null) {
+            deadline = Test.submissionDeadline(paper.getOpenTime(), paper.getDuration(), paper.getCloseTime());
+        }
+        if (deadline != null && now.isAfter(deadline.plusSeconds(graceSeconds))) {
+            throw new IllegalArgumentException("Time is up for this test");
+        }
+
+        Grade grade = grade(answerKey, body.getAnswers());
+        String submissionId = TimeOrderedUuid.nextString();
+        submissionWal.append(new SubmissionWal.Entry(
+                submissionId, answerKey.getTestId(), currentUser.getId(), now,
+                grade.score, grade.maxScore, idempotencyKey(body), answerKey.getLayoutId(),
+                grade.packedAnswers(), grade.correctBitmap(), grade.correctCount));
+        logger.warn("Database unavailable, logged submission {} of test {} for replay", submissionId, answerKey.getTestId());
+
+        Map<String, Object> response = gradedResponse(submissionId, answerKey, grade);
+        // Saved to the database once it is reachable again
+        response.put("persisted", false);
+        return response;
+    }
+
+    // Validates and stores the raw answers with a single insert; grading happens in SubmissionGradingWorker
+    public String enqueue(SubmissionRequestDto body, User currentUser) {
+        User student = resolveStudent(body.getUserId(), currentUser);
+        Test test = testRepository.findById(body.getTestId())
+                .orElseThrow(() -> new IllegalArgumentException("Test not found"));
+        AnswerKey answerKey = loadAnswerKey(test);
+        try {
+            checkWindow(test);
+        } catch (IllegalArgumentException e) {
+            Submission existing = submissionRepository.findByTestAndStudent(test, student).orElseThrow(() -> e);
+            return enqueueExisting(existing, test, body);
+        }
+
+        Submission submission = new Submission();
+        submission.setTest(test);
+        submission.setStudent(student);
+        submission.setSubmittedAt(LocalDateTime.now());
+        submission.setStatus(Submission.SubmissionStatus.IN_PROGRESS);
+        submission.setMaxScore(answerKey.size() * POINTS_PER_QUESTION);
+        submission.setPendingAnswers(writeAnswers(body.getAnswers()));
+        submission.setIdempotencyKey(idempotencyKey(body));
+        try {
+            String submissionId = submissionRepository.save(submission).getId();
+            testStatsRegistry.recordStarted(test.getId());
+            return submissionId;
+        } catch (DataIntegrityViolationException e) {
+            Submission existing = submissionRepository.findByTestAndStudent(test, student).orElseThrow(() -> e);
+            return enqueueExisting(existing, test, body);
+        }
+    }
+
+    private String enqueueExisting(Submission existing, Test test, SubmissionRequestDto body) {
+        if (!existing.isOpenAttempt()) {
+            return checkRetry(existing, body).getId();
+        }
+        checkDeadline(existing, test);
+        String answers = writeAnswers(autosaveService.merge(existing.getId(), existing.getDraftAnswers(), body.getAnswers()));
+        int queued = jdbcTemplate.update(
+                "UPDATE submissions SET pending_answers = ?, idempotency_key = ?, updated_at = ? " +
+                        "WHERE id = ? AND status = 'IN_PROGRESS' AND pending_answers IS NULL",
+                answers, idempotencyKey(body), Timestamp.valueOf(LocalDateTime.now()), existing.getId());
+        if (queued == 0) {
+            throw new IllegalArgumentException("Time is up for this test");
+        }
+        autosaveService.discard(existing.getId());
+        return existing.getId();
+    }
+
+    public Map<String, Object> getStatus(String submissionId, User currentUser) {
+        Submission submission = submissionRepository.findById(submissionId)
+                .orElseThrow(() -> new IllegalArgumentException("Submission not found"));
+        if (!submission.getStudent().getId().equals(currentUser.getId())) {
+            throw new SecurityException("You can only view your own submissions");
+        }
+        return toResponse(submission);
+    }
+
+    // Finalizes an attempt whose time ran out with the answers it has. The test is read again, so an attempt whose
+    // test was extended since its timer was armed comes back with its new deadline instead of being finalized.
+    public Expiry finalizeExpiredAttempt(String submissionId, String testId, LocalDateTime startedAt) {
+        // Draft answers, student id, email and the test's current timing
+        List<Object[]> persisted = jdbcTemplate.query(
+                "SELECT s.draft_answers, u.id, u.email, t.duration, t.close_time FROM submissions s " +
+                        "JOIN users u ON u.id = s.student_id JOIN tests t ON t.id = s.test_id " +
+                        "WHERE s.id = ? AND s.status = 'IN_PROGRESS'",
+                (rs, rowNum) -> new Object[]{
+                        rs.getString(1), rs.getString(2), rs.getString(3), rs.getLong(4),
+                        rs.getTimestamp(5) != null ? rs.getTimestamp(5).toLocalDateTime() : null
+                }, submissionId);
+        if (persisted.isEmpty()) {
+            return Expiry.SUBMITTED;
+        }
+        Object[] row = persisted.get(0);
+        LocalDateTime submittedAt = LocalDateTime.now();
+        LocalDateTime deadline = Test.attemptDeadline(startedAt, (Long) row[3], (LocalDateTime) row[4]);
+        if (submittedAt.isBefore(deadline.plusSeconds(graceSeconds))) {
+            return Expiry.extendedTo(deadline);
+        }
+        AnswerKey answerKey = answerKeyCache.get(testId);
+        List<AnswerDto> answers = autosaveService.merge(submissionId, (String) row[0], null);
+        Integer completionTime = (int) Duration.between(startedAt, submittedAt).toMinutes();
+        Grade grade = grade(answerKey, answers);
+        if (writeGrade(submissionId, answerKey, grade, null, completionTime, submittedAt) == 0) {
+            return Expiry.SUBMITTED;
+        }
+        autosaveService.discard(submissionId);
+        recordScore(testId, submissionId, (String) row[1], (String) row[2], grade, false, submittedAt);
+        return Expiry.FINALIZED;
+    }
+
+    @Override
+    public String metricsName() {
+        return "submissionWrites";
+    }
+
+    // Statements prepared per synchronous submission, including the validation reads
+    @Override
+    public Map<String, Object> stats() {
+        long submissions = syncSubmissions.get();
+        return Map.of(
+                "submissions", submissions,
+                "statementsPerSubmission", submissions > 0 ? (double) syncStatements.get() / submissions : 0.0,
+                "idempotentReplays", retriedSubmissions.get()
+        );
+    }
+
+    public List<String> findPendingIds() {
+        return submissionRepository.findPendingIds(Submission.SubmissionStatus.IN_PROGRESS);
+    }
+
+    // Grades a batch of queued submissions and persists them with one JDBC batch statement. Answer keys are loaded
+    // before the write transaction opens, so a key load never waits for a second pooled connection.
+    public int gradePending(List<String> submissionIds) {
+        List<SubmissionRepository.PendingView> pending =
+                submissionRepository.findPendingByIds(submissionIds, Submission.SubmissionStatus.IN_PROGRESS);
+        List<Object[]> submissionRows = new ArrayList<>();
+        List<Grade> grades = new ArrayList<>();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+
+        for (SubmissionRepository.PendingView view : pending) {
+            AnswerKey answerKey = answerKeyCache.get(view.getTestId());
+            Grade grade = grade(answerKey, readAnswers(view.getPendingAnswers()));
+            submissionRows.add(new Object[]{
+                    grade.score, grade.maxScore, answerKey.getLayoutId(), grade.packedAnswers(),
+                    grade.correctBitmap(), grade.correctCount, now, view.getId()
+            });
+            grades.add(grade);
+        }
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            int[] updated = jdbcTemplate.batchUpdate(
+                    "UPDATE submissions SET score = ?, max_score = ?, layout_id = ?, packed_answers = ?, correct_bitmap = ?, " +
+                            "correct_count = ?, status = 'COMPLETED', pending_answers = NULL, draft_answers = NULL, " +
+                            "updated_at = ? WHERE id = ? AND status = 'IN_PROGRESS'",
+                    submissionRows);
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] != 0) {
+                    SubmissionRepository.PendingView view = pending.get(i);
+                    recordScore(view.getTestId(), view.getId(), view.getStudentId(), view.getStudentEmail(),
+                            grades.get(i), false, view.getSubmittedAt());
+                }
+            }
+        });
+        return pending.size();
+    }
+
+    // Submitted answer per question id; blanks are left out
+    @Transactional(readOnly = true)
+    public Map<String, String> getSelectedAnswers(Submission submission) {
+        Map<String, String> selected = new HashMap<>();
+        if (submission.getPackedAnswers() != null) {
+            String[] questionIds = answerLayoutStore.questionIds(submission.getLayoutId());
+            for (int i = 0; i < questionIds.length; i++) {
+                byte choice = PackedAnswers.selectionAt(submission.getPackedAnswers(), i);
+                if (choice != PackedAnswers.BLANK) {
+                    selected.put(questionIds[i], Answer.values()[choice].name());
+                }
+            }
+            return selected;
+        }
+        // Not migrated yet
+        for (SubmissionAnswer answer : submission.getAnswers()) {
+            if (answer.getSelectedAnswer() != null) {
+                selected.put(answer.getQuestion().getId(), answer.getSelectedAnswer());
+            }
+        }
+        return selected;
+    }
+
+    // One page of the student's grades, newest first; pass the cursor of the previous page to continue
+    public List<StudentGradeDTO> getGrades(String studentId, String classId, String cursor, int size) {
+        if (size < 1 || size > 200) {
+            throw new IllegalArgumentException("Invalid page size");
+        }
+        Pageable page = PageRequest.of(0, size);
+        if (cursor == null || cursor.isBlank()) {
+            return submissionRepository.findGradeRows(studentId, classId, page);
+        }
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        int separator = decoded.indexOf('|');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        LocalDateTime submittedAt;
+        try {
+            submittedAt = LocalDateTime.parse(decoded.substring(0, separator));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return submissionRepository.findGradeRowsBefore(studentId, classId, submittedAt, decoded.substring(separator + 1), page);
+    }
+
+    // Cursor continuing after the given row
+    public static String gradeCursor(StudentGradeDTO last) {
+        String position = last.getSubmittedAt() + "|" + last.getSubmissionId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Entity tag over all of the student's submissions, so it also covers every class filter and page
+    public String getGradesETag(String studentId) {
+        SubmissionRepository.GradesVersionView version = submissionRepository.findGradesVersion(studentId);
+        return "\"" + version.getCount() + "-" + epochMicros(version.getLatestSubmittedAt())
+                + "-" + epochMicros(version.getLatestUpdatedAt()) + "\"";
+    }
+
+    private static String epochMicros(LocalDateTime time) {
+        if (time == null) {
+            return "0";
+        }
+        return Long.toHexString(time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + time.getNano() / 1_000);
+    }
+
+    @Transactional(readOnly = true)
+    public SubmissionResponseDto getResult(String submissionId, User currentUser) {
+        Submission submission = submissionRepository.findById(submissionId)
+                .orElseThrow(() -> new IllegalArgumentException("Submission not found"));
+        if (!submission.getStudent().getId().equals(currentUser.getId())) {
+            throw new SecurityException("You can only view your own submissions");
+        }
+        if (submission.getStatus() != Submission.SubmissionStatus.COMPLETED) {
+            throw new IllegalArgumentException("Submission has not been graded yet");
+        }
+
+        Map<String, String> selected = getSelectedAnswers(submission);
+        List<QuestionResultDto> questions = questionRepository.findByTest_Id(submission.getTest().getId()).stream()
+                .map(q -> new QuestionResultDto(q.getId(), q.getContent(), selected.get(q.getId()), q.getAnswer()))
+                .collect(Collectors.toList());
+        int correctCount = submission.getCorrectCount() != null
+                ? submission.getCorrectCount()
+                : (int) Math.round(submission.getScore() / POINTS_PER_QUESTION);
+        int totalQuestions = (int) Math.round(submission.getMaxScore() / POINTS_PER_QUESTION);
+        return new SubmissionResponseDto(submission.getScore(), correctCount, totalQuestions - correctCount, questions);
+    }
+
+    // Folds the submission_answers rows of up to `limit` legacy submissions into the packed columns, laid out like
+    // the test's answer key so all submissions of a test share one layout; unanswered questions are packed as blank.
+    // Answer keys, and with them the layouts, are resolved before the write transaction opens. The legacy rows are
+    // kept unless deleteLegacyRows is set, and always for a submission that answered a question since deleted.
+    public int migrateLegacyAnswers(int limit, boolean deleteLegacyRows) {
+        List<Map<String, Object>> candidates = jdbcTemplate.queryForList(
+                "SELECT s.id, s.test_id FROM submissions s WHERE s.packed_answers IS NULL AND s.status = 'COMPLETED' " +
+                        "AND EXISTS (SELECT 1 FROM submission_answers a WHERE a.submission_id = s.id) LIMIT ?",
+                limit);
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+        Map<String, String> testIds = new HashMap<>();
+        Map<String, AnswerKey> answerKeys = new HashMap<>();
+        for (Map<String, Object> candidate : candidates) {
+            String testId = (String) candidate.get("test_id");
+            testIds.put((String) candidate.get("id"), testId);
+            answerKeys.computeIfAbsent(testId, answerKeyCache::get);
+        }
+
+        Map<String, List<Object[]>> rowsBySubmission = new LinkedHashMap<>();
+        NamedParameterJdbcTemplate named = new NamedParameterJdbcTemplate(jdbcTemplate);
+        named.query("SELECT submission_id, question_id, selected_answer, is_correct FROM submission_answers " +
+                        "WHERE submission_id IN (:ids) ORDER BY submission_id",
+                Map.of("ids", testIds.keySet()),
+                rs -> {
+                    rowsBySubmission.computeIfAbsent(rs.getString(1), id -> new ArrayList<>())
+                            .add(new Object[]{rs.getString(2), rs.getString(3), rs.getBoolean(4)});
+                });
+
+        List<Object[]> submissionRows = new ArrayList<>();
+        List<Object[]> deleteRows = new ArrayList<>();
+        rowsBySubmission.forEach((submissionId, rows) -> {
+            AnswerKey answerKey = answerKeys.get(testIds.get(submissionId));
+            byte[] selected = new byte[answerKey.size()];
+            Arrays.fill(selected, AnswerKey.BLANK);
+            BitSet correct = new BitSet(answerKey.size());
+            boolean complete = true;
+            for (Object[] row : rows) {
+                int index = answerKey.indexOf((String) row[0]);
+                if (index < 0) {
+                    complete = false;
+                    continue;
+                }
+                selected[index] = AnswerKey.ordinalOf((String) row[1]);
+                correct.set(index, (Boolean) row[2]);
+            }
+            submissionRows.add(new Object[]{
+                    answerKey.getLayoutId(), PackedAnswers.packSelections(selected), PackedAnswers.packBits(correct),
+                    correct.cardinality(), submissionId
+            });
+            if (complete) {
+                deleteRows.add(new Object[]{submissionId});
+            }
+        });
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(
+                    "UPDATE submissions SET layout_id = ?, packed_answers = ?, correct_bitmap = ?, correct_count = ? " +
+                            "WHERE id = ? AND packed_answers IS NULL",
+                    submissionRows);
+            if (deleteLegacyRows) {
+                jdbcTemplate.batchUpdate("DELETE FROM submission_answers WHERE submission_id = ?", deleteRows);
+            }
+        });
+        return rowsBySubmission.size();
+    }
+
+    private User resolveStudent(String userId, User currentUser) {
+        // Validate user ID matches current user
+        if (!currentUser.getId().equals(userId) && !currentUser.getEmail().equals(userId)) {
+            throw new SecurityException("You can only submit your own answers");
+        }
+        // Find user by ID or email
+        return userRepository.findById(userId)
+                .or(() -> userRepository.findByEmail(userId))
+                .orElseThrow(() -> new IllegalArgumentException("Student not found"));
+    }
+
+    private AnswerKey loadAnswerKey(Test test) {
+        AnswerKey answerKey = answerKeyCache.get(test.getId());
+        if (answerKey.size() == 0) {
+            throw new IllegalArgumentException("No questions found for this test");
+        }
+        return answerKey;
+    }
+
+    private String idempotencyKey(SubmissionRequestDto body) {
+        String key = body.getIdempotencyKey();
+        if (key != null && key.length() > 64) {
+            throw new IllegalArgumentException("Idempotency key must be at most 64 characters");
+        }
+        return key;
+    }
+
+    // The unique (test_id, student_id) key rejected the insert: a retry of the same request gets the
+    // original submission back, anything else is a second attempt
+    private Submission checkRetry(Submission existing, SubmissionRequestDto body) {
+        String key = body.getIdempotencyKey();
+        if (key == null || !key.equals(existing.getIdempotencyKey())) {
+            throw new IllegalArgumentException("You have already submitted this test");
+        }
+        retriedSubmissions.incrementAndGet();
+        return existing;
+    }
+
+    // A submission without an attempt is held to the test window, counting its duration from the open time
+    private void checkWindow(Test test) {
+        LocalDateTime now = LocalDateTime.now();
+        if (test.getOpenTime() != null && now.isBefore(test.getOpenTime())) {
+            throw new IllegalArgumentException("Test is not open yet");
+        }
+        LocalDateTime deadline = test.submissionDeadline();
+        if (deadline != null && now.isAfter(deadline.plusSeconds(graceSeconds))) {
+            throw new IllegalArgumentException("Time is up for this test");
+        }
+    }
+
+    private void checkDeadline(Submission attempt, Test test) {
+        LocalDateTime deadline = test.attemptDeadline(attempt.getStartedAt()).plusSeconds(graceSeconds);
+        if (LocalDateTime.now().isAfter(deadline)) {
+            throw new IllegalArgumentException("Time is up for this test");
+        }
+    }
+
+    // Completes an open attempt; 0 when it was already finalized or queued
+    private int writeGrade(String submissionId, AnswerKey answerKey, Grade grade, String idempotencyKey,
+                           Integer completionTime, LocalDateTime submittedAt) {
+        Timestamp now = Timestamp.valueOf(submittedAt);
+        return jdbcTemplate.update(
+                "UPDATE submissions SET score = ?, max_score = ?, layout_id = ?, packed_answers = ?, correct_bitmap = ?, " +
+                        "correct_count = ?, idempotency_key = COALESCE(?, idempotency_key), completion_time = ?, " +
+                        "draft_answers = NULL, status = 'COMPLETED', submitted_at = ?, updated_at = ? " +
+                        "WHERE id = ? AND status = 'IN_PROGRESS' AND pending_answers IS NULL",
+                grade.score, grade.maxScore, answerKey.getLayoutId(), grade.packedAnswers(), grade.correctBitmap(),
+                grade.correctCount, idempotencyKey, completionTime, now, now, submissionId);
+    }
+
+    // Result caches of the test take the new score once the grading commit is visible
+    private void recordScore(String testId, String submissionId, User student, Grade grade, boolean inserted,
+                             LocalDateTime submittedAt) {
+        recordScore(testId, submissionId, student.getId(), student.getEmail(), grade, inserted, submittedAt);
+    }
+
+    private void recordScore(String testId, String submissionId, String studentId, String email, Grade grade,
+                             boolean inserted, LocalDateTime submittedAt) {
+        if (inserted) {
+            testStatsRegistry.recordSubmission(testId, grade.score);
+        } else {
+            testStatsRegistry.recordGraded(testId, grade.score);
+        }
+        scoreDistributionCache.record(testId, grade.score, grade.maxScore);
+        itemAnalysisService.invalidate(testId);
+        leaderboardCache.record(testId, submissionId, studentId, email, grade.score, submittedAt);
+        // The student's attempt, if there was one, is over and its timer cancelled
+        openAttemptIndex.remove(testId, studentId);
+    }
+
+    private Map<String, Object> gradedResponse(String submissionId, AnswerKey answerKey, Grade grade) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("submissionId", submissionId);
+        response.put("score", grade.score);
+        response.put("maxScore", grade.maxScore);
+        response.put("percentage", (grade.score / grade.maxScore) * 100);
+        response.put("correctCount", grade.correctCount);
+        response.put("totalQuestions", answerKey.size());
+        response.put("status", Submission.SubmissionStatus.COMPLETED.name());
+        return response;
+    }
+
+    private Map<String, Object> toResponse(Submission submission) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("submissionId", submission.getId());
+        response.put("status", submission.getStatus().name());
+        if (submission.getStatus() == Submission.SubmissionStatus.COMPLETED) {
+            response.put("score", submission.getScore());
+            response.put("maxScore", submission.getMaxScore());
+            response.put("percentage", (submission.getScore() / submission.getMaxScore()) * 100);
+            response.put("correctCount", submission.getCorrectCount());
+            response.put("totalQuestions", (int) Math.round(submission.getMaxScore() / POINTS_PER_QUESTION));
+        }
+        return response;
+    }
+
+    private Grade grade(AnswerKey answerKey, List<AnswerDto> answers) {
+        int totalQuestions = answerKey.size();
+        byte[] selected = new byte[totalQuestions];
+        Arrays.fill(selected, AnswerKey.BLANK);
+        if (answers != null) {
+            for (AnswerDto a : answers) {
+                int index = a.getQuestionId() != null ? answerKey.indexOf(a.getQuestionId()) : -1;
+                if (index >= 0 && a.getSubmitAnswer() != null) {
+                    selected[index] = AnswerKey.ordinalOf(a.getSubmitAnswer());
+                }
+            }
+        }
+        int correctCount = 0;
+        for (int i = 0; i < totalQuestions; i++) {
+            if (answerKey.isCorrect(i, selected[i])) {
+                correctCount++;
+            }
+        }
+        return new Grade(answerKey, selected, correctCount,
+                correctCount * POINTS_PER_QUESTION, totalQuestions * POINTS_PER_QUESTION);
+    }
+
+    private String writeAnswers(List<AnswerDto> answers) {
+        try {
+            return objectMapper.writeValueAsString(answers != null ? answers : List.of());
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid answers");
+        }
+    }
+
+    private List<AnswerDto> readAnswers(String json) {
+        try {
+            return objectMapper.readValue(json, new TypeReference<List<AnswerDto>>() {});
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Corrupt pending answers", e);
+        }
+    }
+
+    // What became of an attempt whose timer fired
+    public static final class Expiry {
+        static final Expiry FINALIZED = new Expiry(true, null);
+        // Submitted by the student meanwhile
+        static final Expiry SUBMITTED = new Expiry(false, null);
+
+        private final boolean finalized;
+        private final LocalDateTime extendedTo;
+
+        private Expiry(boolean finalized, LocalDateTime extendedTo) {
+            this.finalized = finalized;
+            this.extendedTo = extendedTo;
+        }
+
+        static Expiry extendedTo(LocalDateTime deadline) {
+            return new Expiry(false, deadline);
+        }
+
+        public boolean isFinalized() {
+            return finalized;
+        }
+
+        // The attempt's new deadline when its test was extended, otherwise null
+        public LocalDateTime getExtendedTo() {
+            return extendedTo;
+        }
+    }
+
+    private static final class Grade {
+        private final AnswerKey answerKey;
+        private final byte[] selected;
+        private final int correctCount;
+        private final double score;
+        private final double maxScore;
+
+        private Grade(AnswerKey answerKey, byte[] selected, int correctCount, double score, double maxScore) {
+            this.answerKey = answerKey;
+            this.selected = selected;
+            this.correctCount = correctCount;
+            this.score = score;
+            this.maxScore = maxScore;
+        }
+
+        private boolean isCorrect(int index) {
+            return answerKey.isCorrect(index, selected[index]);
+        }
+
+        private byte[] packedAnswers() {
+            return PackedAnswers.packSelections(selected);
+        }
+
+        private byte[] correctBitmap() {
+            BitSet bits = new BitSet(selected.length);
+            for (int i = 0; i < selected.length; i++) {
+                bits.set(i, isCorrect(i));
+            }
+            return PackedAnswers.packBits(bits);
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package cnpmnc.assignment.service;
+
+import cnpmnc.assignment.cache.LeaderboardCache;
+import cnpmnc.assignment.cache.ScoreDistributionCache;
+import cnpmnc.assignment.cache.TestStatsRegistry;
+import cnpmnc.assignment.util.MappedLog;
+import cnpmnc.assignment.util.MetricsSource;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Durable local log of graded submissions that could not be written while the database was unreachable.
+// The replayer drains it in append order. A logged submission completes the student's open attempt of the test;
+// one that finds the test already graded for the student is dropped and counted, which also makes replay idempotent.
+// Each batch is one multi-row upsert whose RETURNING rows tell which entries were applied.
+@Component
+@RequiredArgsConstructor
+public class SubmissionWal implements MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(SubmissionWal.class);
+
+    private static final String INSERT_SQL =
+            "INSERT INTO submissions (id, test_id, student_id, submitted_at, score, max_score, status, " +
+                    "idempotency_key, layout_id, packed_answers, correct_bitmap, correct_count, created_at, updated_at) " +
+                    "VALUES ";
+    private static final String ROW_SQL = "(?, ?, ?, ?, ?, ?, 'COMPLETED', ?, ?, ?, ?, ?, ?, ?)";
+    // Same conditions as grading an attempt online: only an open attempt whose answers are not queued is taken over
+    private static final String CONFLICT_SQL =
+            " ON CONFLICT (test_id, student_id) DO UPDATE SET submitted_at = EXCLUDED.submitted_at, " +
+                    "score = EXCLUDED.score, max_score = EXCLUDED.max_score, status = 'COMPLETED', " +
+                    "idempotency_key = EXCLUDED.idempotency_key, layout_id = EXCLUDED.layout_id, " +
+                    "packed_answers = EXCLUDED.packed_answers, correct_bitmap = EXCLUDED.correct_bitmap, " +
+                    "correct_count = EXCLUDED.correct_count, draft_answers = NULL, updated_at = EXCLUDED.updated_at, " +
+                    "completion_time = CAST(FLOOR(EXTRACT(EPOCH FROM EXCLUDED.submitted_at - submissions.started_at) / 60) AS INTEGER) " +
+                    "WHERE submissions.status = 'IN_PROGRESS' AND submissions.pending_answers IS NULL " +
+                    "RETURNING test_id, student_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TestStatsRegistry testStatsRegistry;
+    private final ScoreDistributionCache scoreDistributionCache;
+    private final ItemAnalysisService itemAnalysisService;
+    private final LeaderboardCache leaderboardCache;
+
+    @Value("${submission.wal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${submission.wal.path:data/submission.wal}")
+    private String path;
+
+    @Value("${submission.wal.size-mb:64}")
+    private int sizeMb;
+
+    @Value("${submission.wal.replay-batch-size:100}")
+    private int replayBatchSize;
+
+    private MappedLog log;
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+    private volatile double lastReplayRate;
+    private volatile String lastReplayError;
+
+    @PostConstruct
+    public void open() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            log = new MappedLog(Path.of(path), sizeMb * 1024 * 1024);
+            if (log.pendingRecords() > 0) {
+                logger.warn("Submission log holds {} submissions waiting for replay", log.pendingRecords());
+            }
+        } catch (IOException e) {
+            logger.error("Could not open submission log at {}, offline submissions are disabled", path, e);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    public boolean isAvailable() {
+        return log != null;
+    }
+
+    // Returns once the entry is on disk
+    public void append(Entry entry) {
+        int position;
+        try {
+            position = log.append(encode(entry));
+        } catch (IllegalStateException e) {
+            throw new IllegalStateException("Offline submission log is full", e);
+        }
+        log.sync(position);
+        appended.incrementAndGet();
+    }
+
+    @Scheduled(fixedDelayString = "${submission.wal.replay-interval-ms:5000}")
+    public void replay() {
+        if (log == null || log.pendingRecords() == 0) {
+            return;
+        }
+        long started = System.nanoTime();
+        long count = 0;
+        try {
+            List<MappedLog.Entry> batch;
+            while (!(batch = log.read(replayBatchSize)).isEmpty()) {
+                // One row per test and student: an upsert cannot touch the same row twice, and a later submission
+                // of the same test would conflict with the earlier one anyway
+                Map<String, Entry> entries = new LinkedHashMap<>();
+                for (MappedLog.Entry record : batch) {
+                    Entry entry = decode(record.getPayload());
+                    if (entries.putIfAbsent(entry.testId + "|" + entry.studentId, entry) != null) {
+                        dropConflict(entry);
+                    }
+                }
+                Set<String> applied;
+                try {
+                    applied = upsert(new ArrayList<>(entries.values()));
+                } catch (DataIntegrityViolationException e) {
+                    applied = upsertOneByOne(entries.values());
+                }
+                Set<String> testIds = new HashSet<>();
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    testIds.add(entry.getValue().testId);
+                    if (!applied.contains(entry.getKey())) {
+                        dropConflict(entry.getValue());
+                    }
+                }
+                // Rows may have been inserted or taken over from an attempt, so the statistics are recounted
+                for (String testId : testIds) {
+                    testStatsRegistry.invalidate(testId);
+                    scoreDistributionCache.invalidate(testId);
+                    itemAnalysisService.invalidate(testId);
+                    leaderboardCache.invalidate(testId);
+                }
+                log.checkpoint(batch.get(batch.size() - 1).getEndPosition(), batch.size());
+                count += batch.size();
+                replayed.addAndGet(batch.size());
+            }
+            lastReplayError = null;
+        } catch (DataAccessException e) {
+            // Still offline; the checkpoint only covers batches that were written
+            lastReplayError = e.getMessage();
+        } finally {
+            double seconds = (System.nanoTime() - started) / 1_000_000_000.0;
+            if (count > 0) {
+                lastReplayRate = count / seconds;
+                logger.info("Replayed {} logged submissions ({} per second)", count, Math.round(lastReplayRate));
+            }
+        }
+    }
+
+    // "testId|studentId" of the entries that were inserted or completed an open attempt
+    private Set<String> upsert(List<Entry> entries) {
+        StringBuilder sql = new StringBuilder(INSERT_SQL);
+        List<Object> args = new ArrayList<>(entries.size() * 13);
+        for (int i = 0; i < entries.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append(ROW_SQL);
+            args.addAll(Arrays.asList(entries.get(i).toRow()));
+        }
+        sql.append(CONFLICT_SQL);
+        Set<String> applied = new HashSet<>();
+        jdbcTemplate.query(sql.toString(), (RowCallbackHandler) rs -> applied.add(rs.getString(1) + "|" + rs.getString(2)),
+                args.toArray());
+        return applied;
+    }
+
+    // An entry that can never be written (e.g. its test was deleted meanwhile) must not block the rest of the log
+    private Set<String> upsertOneByOne(Collection<Entry> entries) {
+        Set<String> applied = new HashSet<>();
+        for (Entry entry : entries) {
+            try {
+                applied.addAll(upsert(List.of(entry)));
+            } catch (DataIntegrityViolationException e) {
+                // Counted as discarded rather than as a conflict
+                applied.add(entry.testId + "|" + entry.studentId);
+                discarded.incrementAndGet();
+                logger.error("Discarding logged submission {} of test {}: {}", entry.submissionId, entry.testId, e.getMessage());
+            }
+        }
+        return applied;
+    }
+
+    // The student's submission of the test was graded before this one reached the database
+    private void dropConflict(Entry entry) {
+        conflicts.incrementAndGet();
+        logger.warn("Dropping logged submission {} of test {} by student {}: the test is already graded for the student",
+                entry.submissionId, entry.testId, entry.studentId);
+    }
+
+    @Override
+    public String metricsName() {
+        return "submissionLog";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("available", log != null);
+        if (log != null) {
+            stats.put("depth", log.pendingRecords());
+            stats.put("depthBytes", log.pendingBytes());
+            stats.put("capacityBytes", log.capacity());
+        }
+        stats.put("appended", appended.get());
+        stats.put("replayed", replayed.get());
+        stats.put("discarded", discarded.get());
+        stats.put("droppedConflicts", conflicts.get());
+        stats.put("lastReplayPerSecond", lastReplayRate);
+        stats.put("lastReplayError", lastReplayError);
+        return stats;
+    }
+
+    private static byte[] encode(Entry entry) {
+        try (ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+             DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(entry.submissionId);
+            out.writeUTF(entry.testId);
+            out.writeUTF(entry.studentId);
+            out.writeLong(Timestamp.valueOf(entry.submittedAt).getTime());
+            out.writeDouble(entry.score);
+            out.writeDouble(entry.maxScore);
+            out.writeUTF(entry.idempotencyKey != null ? entry.idempotencyKey : "");
+            out.writeUTF(entry.layoutId);
+            writeBytes(out, entry.packedAnswers);
+            writeBytes(out, entry.correctBitmap);
+            out.writeInt(entry.correctCount);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Entry decode(byte[] payload) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            String submissionId = in.readUTF();
+            String testId = in.readUTF();
+            String studentId = in.readUTF();
+            LocalDateTime submittedAt = new Timestamp(in.readLong()).toLocalDateTime();
+            double score = in.readDouble();
+            double maxScore = in.readDouble();
+            String idempotencyKey = in.readUTF();
+            String layoutId = in.readUTF();
+            byte[] packedAnswers = readBytes(in);
+            byte[] correctBitmap = readBytes(in);
+            int correctCount = in.readInt();
+            return new Entry(submissionId, testId, studentId, submittedAt, score, maxScore,
+                    idempotencyKey.isEmpty() ? null : idempotencyKey, layoutId, packedAnswers, correctBitmap, correctCount);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] value = new byte[in.readInt()];
+        in.readFully(value);
+        return value;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static final class Entry {
+        private final String submissionId;
+        private final String testId;
+        private final String studentId;
+        private final LocalDateTime submittedAt;
+        private final double score;
+        private final double maxScore;
+        private final String idempotencyKey;
+        private final String layoutId;
+        private final byte[] packedAnswers;
+        private final byte[] correctBitmap;
+        private final int correctCount;
+
+        private Object[] toRow() {
+            Timestamp submitted = Timestamp.valueOf(submittedAt);
+            return new Object[]{
+                    submissionId, testId, studentId, submitted, score, maxScore,
+                    idempotencyKey, layoutId, packedAnswers, correctBitmap, correctCount, submitted, submitted
+            };
+        }
+    }
+}
@@ -1,39 +1,73 @@
 package cnpmnc.assignment.service;
 
+import cnpmnc.assignment.cache.AnswerKeyCache;
+import cnpmnc.assignment.cache.ClassMembershipIndex;
+import cnpmnc.assignment.cache.ExamPaper;
+import cnpmnc.assignment.cache.ExamPaperCache;
+import cnpmnc.assignment.cache.LeaderboardCache;
+import cnpmnc.assignment.cache.OpenAttemptIndex;
+import cnpmnc.assignment.cache.PasscodeIndex;
+import cnpmnc.assignment.cache.ScoreDistributionCache;
+import cnpmnc.assignment.cache.TestStatsRegistry;
+import cnpmnc.assignment.dto.DistractorAnalysisDTO;
+import cnpmnc.assignment.dto.ItemAnalysisDTO;
+import cnpmnc.assignment.dto.LeaderboardDTO;
 import cnpmnc.assignment.dto.QuestionDTO;
 import cnpmnc.assignment.dto.QuestionDTOforStudent;
 import cnpmnc.assignment.dto.RequestDTO.AddQuestions;
 import cnpmnc.assignment.dto.RequestDTO.AddTestRequestDTO;
+import cnpmnc.assignment.dto.ScoreDistributionDTO;
 import cnpmnc.assignment.dto.StudentSubmissionDTO;
 import cnpmnc.assignment.dto.TestDTO;
 import cnpmnc.assignment.dto.TestResultsResponseDTO;
 import cnpmnc.assignment.dto.TestResultsSummaryDTO;
 import cnpmnc.assignment.model.Class;
 import cnpmnc.assignment.model.Question;
-import cnpmnc.assignment.model.Submission;
+import cnpmnc.assignment.model.Role;
 import cnpmnc.assignment.model.Test;
 import cnpmnc.assignment.model.User;
 import cnpmnc.assignment.repository.ClassRepository;
 import cnpmnc.assignment.repository.QuestionRepository;
 import cnpmnc.assignment.repository.SubmissionRepository;
 import cnpmnc.assignment.repository.TestRepository;
+import cnpmnc.assignment.util.MetricsSource;
+import cnpmnc.assignment.util.ScoreSketch;
+import cnpmnc.assignment.util.SingleFlight;
 import cnpmnc.assignment.util.constant.TestStatus;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
+import java.math.BigDecimal;
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
-public class TestService {
+public class TestService implements MetricsSource {
 
     private final ClassRepository classRepository;
     private final TestRepository testRepository;
     private final QuestionRepository questionRepository;
     private final SubmissionRepository submissionRepository;
+    private final ExamPaperCache examPaperCache;
+    private final AnswerKeyCache answerKeyCache;
+    private final PasscodeIndex passcodeIndex;
+    private final ClassMembershipIndex classMembershipIndex;
+    private final RegradeService regradeService;
+    private final TestStatsRegistry testStatsRegistry;
+    private final ScoreDistributionCache scoreDistributionCache;
+    private final ItemAnalysisService itemAnalysisService;
+    private final LeaderboardCache leaderboardCache;
+    private final OpenAttemptIndex openAttemptIndex;
+    private final PersonalResultService personalResultService;
+    // Exam-start bursts share one database load per test / passcode
+    private final SingleFlight<String, ExamPaper> examPaperLoads = new SingleFlight<>();
+    private final SingleFlight<String, String> passcodeLoads = new SingleFlight<>();
     private static final String ALPHANUM = "ABCDEFGHJKLMNPQRSTUVWXYZ23456789";
     private static final SecureRandom RAND = new SecureRandom();
 
@@ -80,6 +114,7 @@ public class TestService {
         newTest.setClazz(classEntity);
         
         Test savedTest = testRepository.save(newTest);
+        passcodeIndex.put(savedTest.getPasscode(), savedTest.getId());
         return TestDTO.fromTest(savedTest);
     }
     public List<TestDTO> getTestClass(String classId, User currentUser) {
@@ -88,9 +123,8 @@ public class TestService {
 
         // Check authorization
         //Student or Teacher in class
-        Set<User> students = classEntity.getStudents();
         if (!classEntity.getTeacher().getId().equals(currentUser.getId())
-                && !students.contains(currentUser)) {
+                && !classMembershipIndex.isMember(classId, currentUser.getId())) {
             throw new SecurityException("You are not authorized to access this class");
         }
         return classEntity.getTests().stream()
@@ -101,9 +135,8 @@ public class TestService {
         Test testEntity = testRepository.findById(testId).orElseThrow(() -> new IllegalArgumentException("Test not found"));
         Class classEntity = classRepository.findById(testEntity.getClazz().getId())
                 .orElseThrow(() -> new IllegalArgumentException("Class not found for test"));        // Check authorization
-        Set<User> students = classEntity.getStudents();
         if (!classEntity.getTeacher().getId().equals(currentUser.getId())
-                && !students.contains(currentUser)) {
+                && !classMembershipIndex.isMember(classEntity.getId(), currentUser.getId())) {
             throw new SecurityException("You are not authorized to access this test");
         }
         return TestDTO.fromTest(testEntity);
@@ -142,6 +175,7 @@ public class TestService {
         if (updateDTO.getDuration() != null) {
             testEntity.setDuration(updateDTO.getDuration());
         }
+        String oldPasscode = testEntity.getPasscode();
         if (updateDTO.getPasscode() != null && !updateDTO.getPasscode().trim().isEmpty()) {
             String newPasscode = updateDTO.getPasscode().trim().toUpperCase();
             // Check if passcode is different and not already taken
@@ -153,6 +187,13 @@ public class TestService {
         }
 
         Test savedTest = testRepository.save(testEntity);
+        if (!savedTest.getPasscode().equals(oldPasscode)) {
+            passcodeIndex.remove(oldPasscode);
+            passcodeIndex.put(savedTest.getPasscode(), savedTest.getId());
+        }
+        examPaperCache.invalidate(testId);
+        // Running attempts are held to the new timing
+        openAttemptIndex.refresh(savedTest);
         return TestDTO.fromTest(savedTest);
     }
 
@@ -174,6 +215,14 @@ public class TestService {
         }
 
         testRepository.delete(testEntity);
+        passcodeIndex.remove(testEntity.getPasscode());
+        examPaperCache.invalidate(testId);
+        answerKeyCache.invalidate(testId);
+        personalResultService.invalidate(testId);
+        testStatsRegistry.invalidate(testId);
+        scoreDistributionCache.invalidate(testId);
+        itemAnalysisService.invalidate(testId);
+        leaderboardCache.invalidate(testId);
     }
 
     public QuestionDTO addQuestionToTest(String classId, String testId, AddQuestions questionDTO, User currentUser) {
@@ -203,6 +252,9 @@ public class TestService {
         newQuestion.setTest(testEntity);
 
         Question savedQuestion = questionRepository.save(newQuestion);
+        examPaperCache.invalidate(testId);
+        answerKeyCache.invalidate(testId);
+        personalResultService.invalidate(testId);
         return QuestionDTO.fromQuestion(savedQuestion);
     }
 
@@ -247,11 +299,20 @@ public class TestService {
         if (updateDTO.getChoiceD() != null) {
             questionEntity.setChoiceD(updateDTO.getChoiceD());
         }
+        boolean keyChanged = false;
         if (updateDTO.getAnswer() != null) {
+            keyChanged = !updateDTO.getAnswer().name().equals(questionEntity.getAnswer());
             questionEntity.setAnswer(updateDTO.getAnswer().name());
         }
 
         Question savedQuestion = questionRepository.save(questionEntity);
+        examPaperCache.invalidate(testId);
+        answerKeyCache.invalidate(testId);
+        personalResultService.invalidate(testId);
+        if (keyChanged) {
+            // Existing submissions were scored against the old key
+            regradeService.schedule(testId);
+        }
         return QuestionDTO.fromQuestion(savedQuestion);
     }
 
@@ -281,6 +342,9 @@ public class TestService {
         }
 
         questionRepository.delete(questionEntity);
+        examPaperCache.invalidate(testId);
+        answerKeyCache.invalidate(testId);
+        personalResultService.invalidate(testId);
     }
 
     public List<QuestionDTO> getQuestionOfTest(String classId, String testId, User currentUser) {
@@ -291,9 +355,8 @@ public class TestService {
                 .orElseThrow(() -> new IllegalArgumentException("Class not found"));
 
         // Check authorization
-        Set<User> students = classEntity.getStudents();
         if (!classEntity.getTeacher().getId().equals(currentUser.getId())
-                && !students.contains(currentUser)) {
+                && !classMembershipIndex.isMember(classId, currentUser.getId())) {
             throw new SecurityException("You are not authorized to access this test");
         }
 
@@ -307,7 +370,34 @@ public class TestService {
                 .collect(Collectors.toList());
     }
 
-    public TestResultsResponseDTO getTestResults(String classId, String testId, User currentUser) {
+    public Map<String, Object> regrade(String classId, String testId, User currentUser) {
+        checkTeacherOfTest(classId, testId, currentUser);
+        regradeService.schedule(testId);
+        return regradeService.getStatus(testId);
+    }
+
+    public Map<String, Object> getRegradeStatus(String classId, String testId, User currentUser) {
+        checkTeacherOfTest(classId, testId, currentUser);
+        return regradeService.getStatus(testId);
+    }
+
+    void checkTeacherOfTest(String classId, String testId, User currentUser) {
+        Test testEntity = testRepository.findById(testId)
+                .orElseThrow(() -> new IllegalArgumentException("Test not found"));
+        Class classEntity = classRepository.findById(classId)
+                .orElseThrow(() -> new IllegalArgumentException("Class not found"));
+        if (!classEntity.getTeacher().getId().equals(currentUser.getId())) {
+            throw new SecurityException("You are not authorized to manage this test");
+        }
+        if (!testEntity.getClazz().getId().equals(classId)) {
+            throw new IllegalArgumentException("Test does not belong to this class");
+        }
+    }
+
+    public TestResultsResponseDTO getTestResults(String classId, String testId, int page, int size, User currentUser) {
+        if (page < 0 || size < 1 || size > 500) {
+            throw new IllegalArgumentException("Invalid page or size");
+        }
         Test testEntity = testRepository.findById(testId)
                 .orElseThrow(() -> new IllegalArgumentException("Test not found"));
         
@@ -324,60 +414,195 @@ public class TestService {
             throw new IllegalArgumentException("Test does not belong to this class");
         }
 
-        // Fetch all submissions for this test
-        List<Submission> submissions = submissionRepository.findByTestId(testId);
+        // Summary from the in-memory statistics, one projection query for the requested page
+        TestResultsSummaryDTO summary = buildSummary(classId, testId);
+        List<StudentSubmissionDTO> submissionDTOs = submissionRepository.findResultRowsByTestId(testId, PageRequest.of(page, size));
 
-        // Convert to DTOs
-        List<StudentSubmissionDTO> submissionDTOs = submissions.stream()
-                .map(StudentSubmissionDTO::fromSubmission)
-                .collect(Collectors.toList());
+        return new TestResultsResponseDTO(
+                testId,
+                testEntity.getTitle(),
+                submissionDTOs,
+                summary,
+                page,
+                size
+        );
+    }
 
-        // Calculate summary statistics
-        long totalSubmissions = submissions.size();
-        double maxScore = testEntity.getQuestions().stream()
-                .mapToDouble(q -> 10.0) // Assuming each question is 10 points
-                .sum();
-        
-        double highestScore = submissions.stream()
-                .mapToDouble(Submission::getScore)
-                .max()
-                .orElse(0.0);
-        
-        double lowestScore = submissions.stream()
-                .mapToDouble(Submission::getScore)
-                .min()
-                .orElse(0.0);
-        
-        double averageScore = submissions.stream()
-                .mapToDouble(Submission::getScore)
-                .average()
-                .orElse(0.0);
+    // Statistics only, for pages that poll while an exam is running
+    public TestResultsSummaryDTO getTestSummary(String classId, String testId, User currentUser) {
+        checkTeacherOfTest(classId, testId, currentUser);
+        return buildSummary(classId, testId);
+    }
 
-        // Calculate completion rate (students in class vs submissions)
-        long totalStudents = classEntity.getStudents().size();
-        double completionRate = totalStudents > 0 
-                ? (double) totalSubmissions / totalStudents * 100.0 
-                : 0.0;
+    public ItemAnalysisDTO getItemAnalysis(String classId, String testId, User currentUser) {
+        checkTeacherOfTest(classId, testId, currentUser);
+        return itemAnalysisService.get(testId);
+    }
+
+    public DistractorAnalysisDTO getDistractorAnalysis(String classId, String testId, User currentUser) {
+        checkTeacherOfTest(classId, testId, currentUser);
+        return itemAnalysisService.getDistractors(testId);
+    }
+
+    // Percentiles and histogram from the test's score sketch; cost does not depend on the number of submissions
+    public ScoreDistributionDTO getScoreDistribution(String classId, String testId, List<Double> percentiles,
+                                                     int buckets, User currentUser) {
+        for (Double percentile : percentiles) {
+            if (percentile == null || percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("Percentiles must be between 0 and 100");
+            }
+        }
+        checkTeacherOfTest(classId, testId, currentUser);
+        ScoreSketch sketch = scoreDistributionCache.get(testId);
+        if (buckets < 1 || sketch.resolution() % buckets != 0) {
+            throw new IllegalArgumentException("Bucket count must divide " + sketch.resolution());
+        }
+        double maxScore = answerKeyCache.get(testId).size() * SubmissionService.POINTS_PER_QUESTION;
 
-        TestResultsSummaryDTO summary = new TestResultsSummaryDTO(
-                totalSubmissions,
-                highestScore,
-                lowestScore,
-                averageScore,
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (Double percentile : percentiles) {
+            scores.put(BigDecimal.valueOf(percentile).stripTrailingZeros().toPlainString(),
+                    scoreAt(sketch, percentile / 100.0, maxScore));
+        }
+        long[] counts = sketch.histogram(buckets);
+        List<ScoreDistributionDTO.Bucket> histogram = new ArrayList<>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            histogram.add(new ScoreDistributionDTO.Bucket(
+                    maxScore * i / buckets, maxScore * (i + 1) / buckets, counts[i]));
+        }
+        return new ScoreDistributionDTO(
+                testId,
+                sketch.count(),
                 maxScore,
-                completionRate
+                scoreAt(sketch, 0.5, maxScore),
+                scoreAt(sketch, 0.25, maxScore),
+                scoreAt(sketch, 0.75, maxScore),
+                scores,
+                histogram
         );
+    }
 
-        return new TestResultsResponseDTO(
+    // Served from the in-memory leaderboard; a student's poll touches no table at all.
+    // Only the teacher sees the ranking; a student gets their own rank and the number ranked, never classmates' entries.
+    public LeaderboardDTO getLeaderboard(String classId, String testId, int page, int size, User currentUser) {
+        // The offset page * size must fit in an int
+        if (page < 0 || size < 1 || size > 100 || (long) page * size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid page or size");
+        }
+        ExamPaper paper = getExamPaper(testId);
+        if (!paper.getClassId().equals(classId)) {
+            throw new IllegalArgumentException("Test does not belong to this class");
+        }
+        boolean student = currentUser.getRole() == Role.STUDENT;
+        boolean authorized;
+        if (student) {
+            authorized = classMembershipIndex.isMember(classId, currentUser.getId());
+        } else {
+            Class classEntity = classRepository.findById(classId)
+                    .orElseThrow(() -> new IllegalArgumentException("Class not found"));
+            authorized = classEntity.getTeacher().getId().equals(currentUser.getId());
+        }
+        if (!authorized) {
+            throw new SecurityException("You are not authorized to access this test");
+        }
+
+        LeaderboardCache.View view = student
+                ? leaderboardCache.view(testId, 0, 0, currentUser.getId())
+                : leaderboardCache.view(testId, page * size, size, null);
+        List<LeaderboardDTO.Entry> entries = new ArrayList<>(view.getPage().size());
+        for (LeaderboardCache.Ranked ranked : view.getPage()) {
+            entries.add(toEntry(ranked));
+        }
+        return new LeaderboardDTO(
                 testId,
-                testEntity.getTitle(),
-                submissionDTOs,
-                summary
+                answerKeyCache.get(testId).size() * SubmissionService.POINTS_PER_QUESTION,
+                view.getTotal(),
+                page,
+                size,
+                entries,
+                view.getOwn() != null ? toEntry(view.getOwn()) : null
         );
     }
-    public List<QuestionDTOforStudent> getQuestionsForStudent(Test testEntity) {
-        return testEntity.getQuestions().stream()
-                .map(QuestionDTOforStudent::fromEntity)
-                .collect(Collectors.toList());
+
+    private static LeaderboardDTO.Entry toEntry(LeaderboardCache.Ranked ranked) {
+        LeaderboardCache.Standing standing = ranked.getStanding();
+        // User doesn't have name field, using email
+        return new LeaderboardDTO.Entry(ranked.getRank(), standing.getStudentId(), standing.getEmail(),
+                standing.getScore(), standing.getSubmittedAt());
+    }
+
+    // Sketches hold percentages, so scores follow the current maximum
+    private static Double scoreAt(ScoreSketch sketch, double quantile, double maxScore) {
+        double percentage = sketch.quantile(quantile);
+        return Double.isNaN(percentage) ? null : percentage / 100.0 * maxScore;
+    }
+
+    private TestResultsSummaryDTO buildSummary(String classId, String testId) {
+        TestStatsRegistry.Snapshot stats = testStatsRegistry.snapshot(testId);
+        double maxScore = answerKeyCache.get(testId).size() * SubmissionService.POINTS_PER_QUESTION;
+
+        // Calculate completion rate (students in class vs submissions)
+        long totalStudents = classMembershipIndex.memberCount(classId);
+        double completionRate = totalStudents > 0
+                ? (double) stats.getCompleted() / totalStudents * 100.0
+                : 0.0;
+
+        return new TestResultsSummaryDTO(
+                stats.getTotal(),
+                stats.getHighest(),
+                stats.getLowest(),
+                stats.getAverage(),
+                maxScore,
+                completionRate,
+                stats.getStandardDeviation()
+        );
+    }
+
+    // Resolves a passcode without touching the database unless the index cannot rule it out
+    public String findTestIdByPasscode(String passcode) {
+        String code = passcode.trim().toUpperCase();
+        String testId = passcodeIndex.get(code);
+        if (testId != null) {
+            return testId;
+        }
+        if (!passcodeIndex.mightExist(code)) {
+            throw new IllegalArgumentException("Test not found with this passcode");
+        }
+        return passcodeLoads.load(code, () -> {
+            Test testEntity = testRepository.findByPasscode(code)
+                    .orElseThrow(() -> new IllegalArgumentException("Test not found with this passcode"));
+            passcodeIndex.put(code, testEntity.getId());
+            return testEntity.getId();
+        });
+    }
+
+    // Student view of a test, served from the exam paper cache after the first load
+    public ExamPaper getExamPaper(String testId) {
+        ExamPaper cached = examPaperCache.get(testId);
+        if (cached != null) {
+            return cached;
+        }
+        return examPaperLoads.load(testId, () -> {
+            long version = examPaperCache.currentVersion(testId);
+            Test testEntity = testRepository.findById(testId)
+                    .orElseThrow(() -> new IllegalArgumentException("Test not found"));
+            List<QuestionDTOforStudent> questions = questionRepository.findByTest_Id(testId).stream()
+                    .map(QuestionDTOforStudent::fromEntity)
+                    .collect(Collectors.toList());
+            return examPaperCache.publish(testEntity, questions, version);
+        });
+    }
+
+    @Override
+    public String metricsName() {
+        return "testLoads";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        return Map.of(
+                "examPaperLoads", examPaperLoads.stats(),
+                "passcodeLoads", passcodeLoads.stats()
+        );
     }
 }
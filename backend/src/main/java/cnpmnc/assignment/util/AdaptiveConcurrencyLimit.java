@@ -0,0 +1,100 @@
+package cnpmnc.assignment.util;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// AIMD concurrency limit driven by observed latency: the limit grows additively while requests complete near the
+// best latency seen recently and the limit is actually being used, and shrinks multiplicatively when the smoothed
+// latency climbs past tolerance * minRtt (requests are queueing somewhere, e.g. on the connection pool) or a request
+// fails. A single slow request does not move the average enough to back off, and the limit backs off at most once
+// per limit's worth of completions, the time the average needs to reflect the smaller limit.
+public class AdaptiveConcurrencyLimit {
+
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final double RTT_TOLERANCE = 2.0;
+    // Forget the minimum every this many samples so a permanently slower backend is re-learned
+    private static final int MIN_RTT_WINDOW = 1000;
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private volatile double limit;
+    private long minRttNanos = Long.MAX_VALUE;
+    private long windowMinRttNanos = Long.MAX_VALUE;
+    private int windowSamples;
+    private double smoothedRttNanos;
+    private int sinceBackoff;
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                accepted.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    public void release(long rttNanos, boolean failed) {
+        int inFlightAtCompletion = inFlight.getAndDecrement();
+        synchronized (this) {
+            if (!failed) {
+                sample(rttNanos);
+            }
+            sinceBackoff++;
+            boolean congested = failed || smoothedRttNanos > minRttNanos * RTT_TOLERANCE;
+            if (congested) {
+                if (sinceBackoff >= limit) {
+                    limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+                    sinceBackoff = 0;
+                }
+            } else if (inFlightAtCompletion * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1.0 / Math.max(1.0, Math.sqrt(limit)));
+            }
+        }
+    }
+
+    // Frees the slot without a latency sample, for requests whose latency says nothing about the backend
+    public void releaseUnsampled() {
+        inFlight.decrementAndGet();
+    }
+
+    public Map<String, Object> stats() {
+        synchronized (this) {
+            return Map.of(
+                    "limit", (int) limit,
+                    "inFlight", inFlight.get(),
+                    "accepted", accepted.get(),
+                    "rejected", rejected.get(),
+                    "minRttMs", minRttNanos == Long.MAX_VALUE ? 0.0 : minRttNanos / 1_000_000.0,
+                    "smoothedRttMs", smoothedRttNanos / 1_000_000.0
+            );
+        }
+    }
+
+    private void sample(long rttNanos) {
+        smoothedRttNanos = smoothedRttNanos == 0 ? rttNanos : smoothedRttNanos * 0.9 + rttNanos * 0.1;
+        windowMinRttNanos = Math.min(windowMinRttNanos, rttNanos);
+        minRttNanos = Math.min(minRttNanos, rttNanos);
+        if (++windowSamples >= MIN_RTT_WINDOW) {
+            minRttNanos = windowMinRttNanos;
+            windowMinRttNanos = Long.MAX_VALUE;
+            windowSamples = 0;
+        }
+    }
+}
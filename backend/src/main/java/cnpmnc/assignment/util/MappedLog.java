@@ -0,0 +1,180 @@
+package cnpmnc.assignment.util;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+// Append-only record log in a fixed-size memory-mapped file.
+// Layout: header [magic][replayPos] then records [length][crc32][payload]; a zero length marks the end.
+// Appends are made durable with group commit: the first caller to sync forces every record written so far,
+// callers whose records were covered by that force return without another fsync.
+public class MappedLog implements Closeable {
+
+    private static final int MAGIC = 0x5355424C; // "SUBL"
+    private static final int HEADER_SIZE = 64;
+    private static final int REPLAY_POS_OFFSET = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final Object flushLock = new Object();
+
+    private int writePos;
+    private int replayPos;
+    private int pendingRecords;
+    private volatile int flushedPos;
+
+    public MappedLog(Path path, int capacity) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        this.capacity = capacity;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        if (buffer.getInt(0) != MAGIC) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(REPLAY_POS_OFFSET, HEADER_SIZE);
+            buffer.force(0, HEADER_SIZE);
+        }
+        recover();
+    }
+
+    // Returns the end position of the record, to be passed to sync()
+    public synchronized int append(byte[] payload) {
+        int end = writePos + RECORD_HEADER_SIZE + payload.length;
+        // Keep room for the zero length that terminates the log
+        if (end + 4 > capacity) {
+            throw new IllegalStateException("Log is full");
+        }
+        buffer.put(writePos + RECORD_HEADER_SIZE, payload);
+        buffer.putInt(writePos + 4, crc(payload));
+        buffer.putInt(end, 0);
+        // Length last: a torn write leaves a zero length and the record is ignored on recovery
+        buffer.putInt(writePos, payload.length);
+        writePos = end;
+        pendingRecords++;
+        return end;
+    }
+
+    public void sync(int position) {
+        if (flushedPos >= position) {
+            return;
+        }
+        synchronized (flushLock) {
+            if (flushedPos >= position) {
+                return;
+            }
+            int from;
+            int to;
+            synchronized (this) {
+                from = Math.max(flushedPos, HEADER_SIZE);
+                to = writePos;
+            }
+            buffer.force(from, to - from + 4);
+            flushedPos = to;
+        }
+    }
+
+    // Reads up to max unreplayed records; hand the last entry's end position to checkpoint() once applied
+    public synchronized List<Entry> read(int max) {
+        List<Entry> entries = new ArrayList<>();
+        int position = replayPos;
+        while (entries.size() < max && position < writePos) {
+            int length = buffer.getInt(position);
+            byte[] payload = new byte[length];
+            buffer.get(position + RECORD_HEADER_SIZE, payload);
+            position += RECORD_HEADER_SIZE + length;
+            entries.add(new Entry(payload, position));
+        }
+        return entries;
+    }
+
+    // Marks records up to position as applied; an empty log is rewound to the start of the file
+    public void checkpoint(int position, int records) {
+        synchronized (flushLock) {
+            synchronized (this) {
+                replayPos = position;
+                pendingRecords -= records;
+                if (replayPos == writePos) {
+                    for (int i = HEADER_SIZE; i < writePos + 4 && i < capacity; i++) {
+                        buffer.put(i, (byte) 0);
+                    }
+                    buffer.force(HEADER_SIZE, Math.min(writePos + 4, capacity) - HEADER_SIZE);
+                    writePos = HEADER_SIZE;
+                    replayPos = HEADER_SIZE;
+                    flushedPos = HEADER_SIZE;
+                }
+                buffer.putInt(REPLAY_POS_OFFSET, replayPos);
+                buffer.force(0, HEADER_SIZE);
+            }
+        }
+    }
+
+    public synchronized int pendingRecords() {
+        return pendingRecords;
+    }
+
+    public synchronized int pendingBytes() {
+        return writePos - replayPos;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Finds the end of the valid records; anything after a torn or corrupt record is discarded
+    private void recover() {
+        replayPos = buffer.getInt(REPLAY_POS_OFFSET);
+        int position = HEADER_SIZE;
+        int records = 0;
+        while (position + RECORD_HEADER_SIZE <= capacity) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + RECORD_HEADER_SIZE + length + 4 > capacity) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(position + RECORD_HEADER_SIZE, payload);
+            if (crc(payload) != buffer.getInt(position + 4)) {
+                break;
+            }
+            position += RECORD_HEADER_SIZE + length;
+            if (position > replayPos) {
+                records++;
+            }
+        }
+        buffer.putInt(position, 0);
+        writePos = position;
+        replayPos = Math.min(Math.max(replayPos, HEADER_SIZE), writePos);
+        pendingRecords = records;
+        flushedPos = writePos;
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static final class Entry {
+        private final byte[] payload;
+        private final int endPosition;
+    }
+}
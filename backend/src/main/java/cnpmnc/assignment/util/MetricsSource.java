@@ -0,0 +1,11 @@
+package cnpmnc.assignment.util;
+
+import java.util.Map;
+
+// A component whose runtime counters are listed by the admin metrics endpoint, under metricsName()
+public interface MetricsSource {
+
+    String metricsName();
+
+    Map<String, Object> stats();
+}
@@ -0,0 +1,36 @@
+package cnpmnc.assignment.util;
+
+import java.util.BitSet;
+
+// Selected choices packed two per byte (4 bits each, 0xF = blank) and a per-question correctness bitmap
+public final class PackedAnswers {
+
+    public static final byte BLANK = -1;
+    private static final int BLANK_NIBBLE = 0xF;
+
+    private PackedAnswers() {
+    }
+
+    public static byte[] packSelections(byte[] selected) {
+        byte[] packed = new byte[(selected.length + 1) / 2];
+        for (int i = 0; i < selected.length; i++) {
+            int nibble = selected[i] < 0 ? BLANK_NIBBLE : selected[i];
+            packed[i >> 1] |= (byte) (nibble << ((i & 1) * 4));
+        }
+        return packed;
+    }
+
+    public static byte selectionAt(byte[] packed, int index) {
+        int nibble = (packed[index >> 1] >> ((index & 1) * 4)) & 0xF;
+        return nibble == BLANK_NIBBLE ? BLANK : (byte) nibble;
+    }
+
+    public static byte[] packBits(BitSet bits) {
+        return bits.toByteArray();
+    }
+
+    public static boolean bitAt(byte[] bitmap, int index) {
+        int octet = index >> 3;
+        return bitmap != null && octet < bitmap.length && (bitmap[octet] & (1 << (index & 7))) != 0;
+    }
+}
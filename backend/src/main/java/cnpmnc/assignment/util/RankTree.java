@@ -0,0 +1,167 @@
+package cnpmnc.assignment.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Sorted set that also knows each element's position: a treap whose nodes count their subtree, so add, remove
+// and rank cost O(log n) expected and the elements at [offset, offset + limit) cost O(log n + limit).
+// Elements comparing equal are the same element. Not thread-safe.
+public class RankTree<E> {
+
+    private final Comparator<? super E> comparator;
+    private Node<E> root;
+    private int seed = 0x2545F491;
+
+    // Results of split(); set on the way back up the recursion
+    private Node<E> splitLeft;
+    private Node<E> splitRight;
+    private boolean removed;
+
+    public RankTree(Comparator<? super E> comparator) {
+        this.comparator = comparator;
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    public void add(E element) {
+        split(root, element);
+        Node<E> left = splitLeft;
+        Node<E> right = splitRight;
+        root = merge(merge(left, new Node<>(element, nextPriority())), right);
+    }
+
+    public boolean remove(E element) {
+        removed = false;
+        root = remove(root, element);
+        return removed;
+    }
+
+    // Number of elements ordered before the element, or -1 if it is not in the tree
+    public int rank(E element) {
+        int rank = 0;
+        Node<E> node = root;
+        while (node != null) {
+            int c = comparator.compare(element, node.value);
+            if (c < 0) {
+                node = node.left;
+            } else if (c > 0) {
+                rank += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return rank + size(node.left);
+            }
+        }
+        return -1;
+    }
+
+    public List<E> range(int offset, int limit) {
+        List<E> elements = new ArrayList<>(Math.max(0, Math.min(limit, size() - offset)));
+        collect(root, offset, limit, elements);
+        return elements;
+    }
+
+    // Subtrees wholly before the offset are skipped using their sizes
+    private void collect(Node<E> node, int offset, int limit, List<E> out) {
+        if (node == null || out.size() >= limit) {
+            return;
+        }
+        int leftSize = size(node.left);
+        if (offset < leftSize) {
+            collect(node.left, offset, limit, out);
+        }
+        if (out.size() >= limit) {
+            return;
+        }
+        if (offset <= leftSize) {
+            out.add(node.value);
+        }
+        collect(node.right, Math.max(0, offset - leftSize - 1), limit, out);
+    }
+
+    // Splits into the elements ordered before the key and the rest
+    private void split(Node<E> node, E key) {
+        if (node == null) {
+            splitLeft = null;
+            splitRight = null;
+            return;
+        }
+        if (comparator.compare(node.value, key) < 0) {
+            split(node.right, key);
+            node.right = splitLeft;
+            splitLeft = node;
+        } else {
+            split(node.left, key);
+            node.left = splitRight;
+            splitRight = node;
+        }
+        node.update();
+    }
+
+    // Every element of left is ordered before every element of right
+    private Node<E> merge(Node<E> left, Node<E> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.update();
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.update();
+        return right;
+    }
+
+    private Node<E> remove(Node<E> node, E element) {
+        if (node == null) {
+            return null;
+        }
+        int c = comparator.compare(element, node.value);
+        if (c == 0) {
+            removed = true;
+            return merge(node.left, node.right);
+        }
+        if (c < 0) {
+            node.left = remove(node.left, element);
+        } else {
+            node.right = remove(node.right, element);
+        }
+        node.update();
+        return node;
+    }
+
+    // Xorshift; priorities only need to look random to keep the tree balanced
+    private int nextPriority() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+
+    private static int size(Node<?> node) {
+        return node != null ? node.size : 0;
+    }
+
+    private static final class Node<E> {
+        private final E value;
+        private final int priority;
+        private Node<E> left;
+        private Node<E> right;
+        private int size = 1;
+
+        private Node(E value, int priority) {
+            this.value = value;
+            this.priority = priority;
+        }
+
+        private void update() {
+            size = 1 + size(left) + size(right);
+        }
+    }
+}
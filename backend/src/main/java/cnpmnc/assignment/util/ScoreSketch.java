@@ -0,0 +1,152 @@
+package cnpmnc.assignment.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Distribution of scores as a percentage of the maximum, counted in fixed-width bins over [0, 100].
+// Scores are bounded, so uniform bins give quantiles within one bin width of the exact value, sketches of
+// the same resolution merge by adding counts, and every query costs O(bins) however many scores were added.
+// Updates are lock-free; a reader may see a score counted in the total but not yet in its bin.
+public class ScoreSketch {
+
+    private final AtomicLongArray bins;
+    private final LongAdder count = new LongAdder();
+
+    public ScoreSketch(int resolution) {
+        this.bins = new AtomicLongArray(resolution);
+    }
+
+    // A score without a maximum (a test with no questions) counts as 0%, so count() matches the scores added
+    public void add(double score, double maxScore) {
+        bins.incrementAndGet(maxScore > 0 ? binOf(score / maxScore * 100.0) : 0);
+        count.increment();
+    }
+
+    public void merge(ScoreSketch other) {
+        if (other.resolution() != resolution()) {
+            throw new IllegalArgumentException("Sketches of different resolution cannot be merged");
+        }
+        for (int i = 0; i < resolution(); i++) {
+            long binCount = other.bins.get(i);
+            if (binCount != 0) {
+                bins.addAndGet(i, binCount);
+                count.add(binCount);
+            }
+        }
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public int resolution() {
+        return bins.length();
+    }
+
+    // Percentage at quantile q in [0, 1], interpolated linearly inside the bin that holds it; NaN when empty
+    public double quantile(double q) {
+        long[] snapshot = snapshot();
+        long total = 0;
+        for (long binCount : snapshot) {
+            total += binCount;
+        }
+        if (total == 0) {
+            return Double.NaN;
+        }
+        double rank = Math.min(Math.max(q, 0.0), 1.0) * total;
+        double width = 100.0 / snapshot.length;
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            if (snapshot[i] == 0) {
+                continue;
+            }
+            if (seen + snapshot[i] >= rank) {
+                return i * width + (rank - seen) / snapshot[i] * width;
+            }
+            seen += snapshot[i];
+        }
+        return 100.0;
+    }
+
+    // Counts per bucket of equal width over [0, 100]; buckets must divide the resolution
+    public long[] histogram(int buckets) {
+        if (buckets < 1 || resolution() % buckets != 0) {
+            throw new IllegalArgumentException("Resolution " + resolution() + " is not divisible into " + buckets + " buckets");
+        }
+        long[] snapshot = snapshot();
+        long[] histogram = new long[buckets];
+        int binsPerBucket = snapshot.length / buckets;
+        for (int i = 0; i < snapshot.length; i++) {
+            histogram[i / binsPerBucket] += snapshot[i];
+        }
+        return histogram;
+    }
+
+    // Varint pairs of (bins skipped since the previous non-empty bin, count); a few bytes per distinct score
+    public byte[] toBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32);
+        writeVarint(out, resolution());
+        int previous = -1;
+        for (int i = 0; i < resolution(); i++) {
+            long binCount = bins.get(i);
+            if (binCount != 0) {
+                writeVarint(out, i - previous - 1);
+                writeVarint(out, binCount);
+                previous = i;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public static ScoreSketch fromBytes(byte[] bytes) {
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+        ScoreSketch sketch = new ScoreSketch((int) readVarint(in));
+        int bin = -1;
+        while (in.available() > 0) {
+            bin += (int) readVarint(in) + 1;
+            long binCount = readVarint(in);
+            sketch.bins.addAndGet(bin, binCount);
+            sketch.count.add(binCount);
+        }
+        return sketch;
+    }
+
+    private long[] snapshot() {
+        long[] snapshot = new long[resolution()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = bins.get(i);
+        }
+        return snapshot;
+    }
+
+    private int binOf(double percentage) {
+        int bin = (int) (percentage / 100.0 * resolution());
+        // A full score belongs to the last bin
+        return Math.min(Math.max(bin, 0), resolution() - 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(ByteArrayInputStream in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IllegalArgumentException("Truncated score sketch");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed score sketch");
+    }
+}
@@ -0,0 +1,16 @@
+package cnpmnc.assignment.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+// Spring only streams a ResponseEntity declared as ResponseEntity<StreamingResponseBody>; anything else in it
+// is serialized as JSON, lambda included. Error responses of streaming endpoints therefore go through here.
+public final class StreamingResponses {
+
+    private StreamingResponses() {
+    }
+
+    public static StreamingResponseBody json(ObjectMapper objectMapper, Object body) {
+        return out -> objectMapper.writeValue(out, body);
+    }
+}
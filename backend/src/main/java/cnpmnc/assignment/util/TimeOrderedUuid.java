@@ -0,0 +1,29 @@
+package cnpmnc.assignment.util;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// UUIDv7: millisecond timestamp first, so ids sort by creation time and new rows append to the primary key index
+public final class TimeOrderedUuid {
+
+    // (unix millis << 12) | 12-bit counter, strictly increasing across calls
+    private static final AtomicLong STATE = new AtomicLong();
+
+    private TimeOrderedUuid() {
+    }
+
+    public static UUID next() {
+        long now = System.currentTimeMillis() << 12;
+        long state = STATE.updateAndGet(previous -> Math.max(previous + 1, now));
+        long millis = state >>> 12;
+        long counter = state & 0xFFFL;
+        long msb = (millis << 16) | 0x7000L | counter;
+        long lsb = (ThreadLocalRandom.current().nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(msb, lsb);
+    }
+
+    public static String nextString() {
+        return next().toString();
+    }
+}
@@ -0,0 +1,15 @@
+package cnpmnc.assignment.util;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.uuid.UuidValueGenerator;
+
+import java.util.UUID;
+
+// Id generator for @UuidGenerator(algorithm = ...); ids are assigned in memory so inserts stay batchable
+public class TimeOrderedUuidGenerator implements UuidValueGenerator {
+
+    @Override
+    public UUID generateUuid(SharedSessionContractImplementor session) {
+        return TimeOrderedUuid.next();
+    }
+}
@@ -0,0 +1,127 @@
+package cnpmnc.assignment.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+// Hierarchical timing wheel: O(1) schedule and cancel. The first level covers wheelSize ticks; timers further out
+// go to coarser overflow wheels, created on demand, and cascade down as the clock reaches their bucket.
+// Not thread-safe by itself; callers synchronize schedule() and advance().
+public class TimingWheel<T> {
+
+    private final Level<T> root;
+    private final long tickMs;
+
+    public TimingWheel(long tickMs, int wheelSize, long startMs) {
+        this.root = new Level<>(tickMs, wheelSize, startMs);
+        this.tickMs = tickMs;
+    }
+
+    // Returns the timeout, or null when the deadline is already due and the caller should act immediately
+    public Timeout<T> schedule(T payload, long deadlineMs) {
+        // Rounded up to the next tick so nothing fires before its deadline
+        Timeout<T> timeout = new Timeout<>(payload, deadlineMs, deadlineMs + tickMs - 1);
+        return root.add(timeout) ? timeout : null;
+    }
+
+    // Moves the clock to nowMs and returns the payloads that came due, in tick order
+    public List<T> advance(long nowMs) {
+        List<T> expired = new ArrayList<>();
+        root.advance(nowMs, timeout -> {
+            if (!timeout.cancelled && !root.add(timeout)) {
+                expired.add(timeout.payload);
+            }
+        });
+        return expired;
+    }
+
+    public int size() {
+        return root.size();
+    }
+
+    public static final class Timeout<T> {
+        private final T payload;
+        private final long deadlineMs;
+        private final long slotMs;
+        private volatile boolean cancelled;
+
+        private Timeout(T payload, long deadlineMs, long slotMs) {
+            this.payload = payload;
+            this.deadlineMs = deadlineMs;
+            this.slotMs = slotMs;
+        }
+
+        // The entry stays in its bucket and is dropped when the bucket is flushed
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public long getDeadlineMs() {
+            return deadlineMs;
+        }
+    }
+
+    private interface Sink<T> {
+        void accept(Timeout<T> timeout);
+    }
+
+    private static final class Level<T> {
+        private final long tickMs;
+        private final int wheelSize;
+        private final long interval;
+        private final ArrayDeque<Timeout<T>>[] buckets;
+        private long currentTime;
+        private int size;
+        private Level<T> overflow;
+
+        @SuppressWarnings("unchecked")
+        private Level(long tickMs, int wheelSize, long startMs) {
+            this.tickMs = tickMs;
+            this.wheelSize = wheelSize;
+            this.interval = tickMs * wheelSize;
+            this.buckets = new ArrayDeque[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new ArrayDeque<>();
+            }
+            this.currentTime = startMs - (startMs % tickMs);
+        }
+
+        // False when the timeout falls in the current tick, i.e. it is due
+        private boolean add(Timeout<T> timeout) {
+            long deadline = timeout.slotMs;
+            if (deadline < currentTime + tickMs) {
+                return false;
+            }
+            if (deadline < currentTime + interval) {
+                buckets[(int) ((deadline / tickMs) % wheelSize)].add(timeout);
+                size++;
+                return true;
+            }
+            if (overflow == null) {
+                overflow = new Level<>(interval, wheelSize, currentTime);
+            }
+            return overflow.add(timeout);
+        }
+
+        private void advance(long nowMs, Sink<T> reinsert) {
+            while (currentTime + tickMs <= nowMs) {
+                currentTime += tickMs;
+                // Coarser levels first so entries they release can land in this tick's bucket
+                if (overflow != null) {
+                    overflow.advance(currentTime, reinsert);
+                }
+                ArrayDeque<Timeout<T>> bucket = buckets[(int) ((currentTime / tickMs) % wheelSize)];
+                size -= bucket.size();
+                List<Timeout<T>> flushed = new ArrayList<>(bucket);
+                bucket.clear();
+                for (Timeout<T> timeout : flushed) {
+                    reinsert.accept(timeout);
+                }
+            }
+        }
+
+        private int size() {
+            return size + (overflow != null ? overflow.size() : 0);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package cnpmnc.assignment.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MappedLogTest {
+
+    private static final int CAPACITY = 4096;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsRecordsInAppendOrder() throws IOException {
+        try (MappedLog log = new MappedLog(dir.resolve("wal"), CAPACITY)) {
+            int first = log.append(bytes("first"));
+            int second = log.append(bytes("second"));
+            log.sync(second);
+
+            List<MappedLog.Entry> entries = log.read(10);
+            assertEquals(2, entries.size());
+            assertArrayEquals(bytes("first"), entries.get(0).getPayload());
+            assertEquals(first, entries.get(0).getEndPosition());
+            assertArrayEquals(bytes("second"), entries.get(1).getPayload());
+            assertEquals(second, entries.get(1).getEndPosition());
+            assertEquals(1, log.read(1).size());
+        }
+    }
+
+    @Test
+    void recoversUnreplayedRecordsAfterReopen() throws IOException {
+        Path path = dir.resolve("wal");
+        try (MappedLog log = new MappedLog(path, CAPACITY)) {
+            for (String payload : List.of("a", "b", "c")) {
+                log.sync(log.append(bytes(payload)));
+            }
+            log.checkpoint(log.read(1).get(0).getEndPosition(), 1);
+        }
+
+        try (MappedLog log = new MappedLog(path, CAPACITY)) {
+            assertEquals(2, log.pendingRecords());
+            List<MappedLog.Entry> entries = log.read(10);
+            assertEquals(2, entries.size());
+            assertArrayEquals(bytes("b"), entries.get(0).getPayload());
+            assertArrayEquals(bytes("c"), entries.get(1).getPayload());
+        }
+    }
+
+    @Test
+    void discardsRecordsFromTheFirstCorruptOne() throws IOException {
+        Path path = dir.resolve("wal");
+        try (MappedLog log = new MappedLog(path, CAPACITY)) {
+            for (String payload : List.of("intact", "flipped", "after")) {
+                log.sync(log.append(bytes(payload)));
+            }
+        }
+        // First payload byte of the second record
+        corrupt(path, HEADER_SIZE + RECORD_HEADER_SIZE + "intact".length() + RECORD_HEADER_SIZE);
+
+        try (MappedLog log = new MappedLog(path, CAPACITY)) {
+            assertEquals(1, log.pendingRecords());
+            List<MappedLog.Entry> entries = log.read(10);
+            assertEquals(1, entries.size());
+            assertArrayEquals(bytes("intact"), entries.get(0).getPayload());
+
+            // Appends continue right after the last valid record
+            int end = log.append(bytes("next"));
+            assertEquals(entries.get(0).getEndPosition() + RECORD_HEADER_SIZE + "next".length(), end);
+        }
+    }
+
+    @Test
+    void ignoresTornRecordWithoutLength() throws IOException {
+        Path path = dir.resolve("wal");
+        int end;
+        try (MappedLog log = new MappedLog(path, CAPACITY)) {
+            end = log.append(bytes("complete"));
+            log.sync(log.append(bytes("torn")));
+        }
+        // The length is written last, so a record cut short by a crash has none
+        write(path, end, ByteBuffer.allocate(4).putInt(0, 0));
+
+        try (MappedLog log = new MappedLog(path, CAPACITY)) {
+            assertEquals(1, log.pendingRecords());
+            assertEquals(end - HEADER_SIZE, log.pendingBytes());
+        }
+    }
+
+    @Test
+    void checkpointOfWholeLogRewindsToStart() throws IOException {
+        Path path = dir.resolve("wal");
+        try (MappedLog log = new MappedLog(path, CAPACITY)) {
+            log.append(bytes("one"));
+            log.sync(log.append(bytes("two")));
+            List<MappedLog.Entry> entries = log.read(10);
+            log.checkpoint(entries.get(entries.size() - 1).getEndPosition(), entries.size());
+
+            assertEquals(0, log.pendingRecords());
+            assertEquals(0, log.pendingBytes());
+            assertEquals(HEADER_SIZE + RECORD_HEADER_SIZE + 5, log.append(bytes("three")));
+        }
+
+        try (MappedLog log = new MappedLog(path, CAPACITY)) {
+            List<MappedLog.Entry> entries = log.read(10);
+            assertEquals(1, entries.size());
+            assertArrayEquals(bytes("three"), entries.get(0).getPayload());
+        }
+    }
+
+    @Test
+    void rejectsAppendPastCapacity() throws IOException {
+        try (MappedLog log = new MappedLog(dir.resolve("wal"), 128)) {
+            log.append(new byte[40]);
+            assertThrows(IllegalStateException.class, () -> log.append(new byte[40]));
+            assertEquals(1, log.pendingRecords());
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void corrupt(Path path, int position) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer value = ByteBuffer.allocate(1);
+            channel.read(value, position);
+            value.put(0, (byte) (value.get(0) ^ 0xFF));
+            value.rewind();
+            channel.write(value, position);
+        }
+    }
+
+    private static void write(Path path, int position, ByteBuffer value) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(value, position);
+        }
+    }
+}
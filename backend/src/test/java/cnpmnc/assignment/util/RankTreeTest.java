@@ -0,0 +1,98 @@
+package cnpmnc.assignment.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RankTreeTest {
+
+    @Test
+    void emptyTreeHasNothingToRank() {
+        RankTree<Integer> tree = new RankTree<>(Comparator.naturalOrder());
+
+        assertEquals(0, tree.size());
+        assertEquals(-1, tree.rank(1));
+        assertEquals(List.of(), tree.range(0, 10));
+        assertFalse(tree.remove(1));
+    }
+
+    @Test
+    void ranksInComparatorOrder() {
+        // Highest first, as on a leaderboard
+        RankTree<Integer> tree = new RankTree<>(Comparator.reverseOrder());
+        for (int value : new int[]{50, 90, 70, 10, 30}) {
+            tree.add(value);
+        }
+
+        assertEquals(5, tree.size());
+        assertEquals(List.of(90, 70, 50, 30, 10), tree.range(0, 10));
+        assertEquals(0, tree.rank(90));
+        assertEquals(2, tree.rank(50));
+        assertEquals(4, tree.rank(10));
+        assertEquals(-1, tree.rank(60));
+    }
+
+    @Test
+    void removeShiftsLaterRanks() {
+        RankTree<Integer> tree = new RankTree<>(Comparator.naturalOrder());
+        for (int value = 1; value <= 5; value++) {
+            tree.add(value);
+        }
+
+        assertTrue(tree.remove(2));
+        assertFalse(tree.remove(2));
+        assertEquals(4, tree.size());
+        assertEquals(-1, tree.rank(2));
+        assertEquals(1, tree.rank(3));
+        assertEquals(List.of(1, 3, 4, 5), tree.range(0, 10));
+    }
+
+    @Test
+    void rangeIsClippedToTheTree() {
+        RankTree<Integer> tree = new RankTree<>(Comparator.naturalOrder());
+        for (int value = 0; value < 10; value++) {
+            tree.add(value);
+        }
+
+        assertEquals(List.of(3, 4, 5), tree.range(3, 3));
+        assertEquals(List.of(8, 9), tree.range(8, 5));
+        assertEquals(List.of(), tree.range(10, 5));
+        assertEquals(List.of(), tree.range(20, 5));
+        assertEquals(List.of(), tree.range(0, 0));
+    }
+
+    @Test
+    void matchesSortedSetUnderRandomUpdates() {
+        Random random = new Random(42);
+        RankTree<Integer> tree = new RankTree<>(Comparator.naturalOrder());
+        TreeSet<Integer> expected = new TreeSet<>();
+
+        for (int i = 0; i < 20_000; i++) {
+            int value = random.nextInt(2_000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(value), tree.remove(value));
+            } else if (expected.add(value)) {
+                tree.add(value);
+            }
+            if (i % 500 == 0) {
+                List<Integer> sorted = new ArrayList<>(expected);
+                assertEquals(sorted.size(), tree.size());
+                int offset = sorted.isEmpty() ? 0 : random.nextInt(sorted.size());
+                assertEquals(sorted.subList(offset, Math.min(sorted.size(), offset + 25)), tree.range(offset, 25));
+                for (int probe = 0; probe < 50; probe++) {
+                    int candidate = random.nextInt(2_000);
+                    assertEquals(expected.contains(candidate) ? expected.headSet(candidate).size() : -1, tree.rank(candidate));
+                }
+            }
+        }
+        assertEquals(new ArrayList<>(expected), tree.range(0, expected.size()));
+    }
+}
@@ -0,0 +1,150 @@
+package cnpmnc.assignment.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScoreSketchTest {
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    void encodesSkippedBinsAndCountsAsVarints() {
+        ScoreSketch sketch = new ScoreSketch(200);
+        for (int i = 0; i < 3; i++) {
+            sketch.add(2.5, 100);
+        }
+        for (int i = 0; i < 300; i++) {
+            sketch.add(100, 100);
+        }
+
+        // Resolution 200, then bin 5 holding 3, then 193 bins skipped to bin 199 holding 300
+        byte[] expected = {(byte) 0xC8, 0x01, 5, 3, (byte) 0xC1, 0x01, (byte) 0xAC, 0x02};
+        assertArrayEquals(expected, sketch.toBytes());
+    }
+
+    @Test
+    void roundTripsThroughBytes() {
+        Random random = new Random(11);
+        ScoreSketch sketch = new ScoreSketch(1000);
+        for (int i = 0; i < 50_000; i++) {
+            // Clustered so some bins hold multi-byte counts and gaps between bins need multi-byte varints too
+            double score = random.nextBoolean() ? 80 + random.nextGaussian() * 2 : random.nextDouble() * 100;
+            sketch.add(score, 100);
+        }
+
+        ScoreSketch decoded = ScoreSketch.fromBytes(sketch.toBytes());
+        assertEquals(sketch.resolution(), decoded.resolution());
+        assertEquals(sketch.count(), decoded.count());
+        assertArrayEquals(sketch.histogram(1000), decoded.histogram(1000));
+        assertArrayEquals(sketch.toBytes(), decoded.toBytes());
+    }
+
+    @Test
+    void roundTripsEmptySketch() {
+        ScoreSketch decoded = ScoreSketch.fromBytes(new ScoreSketch(100).toBytes());
+
+        assertEquals(100, decoded.resolution());
+        assertEquals(0, decoded.count());
+        assertTrue(Double.isNaN(decoded.quantile(0.5)));
+    }
+
+    @Test
+    void rejectsTruncatedBytes() {
+        ScoreSketch sketch = new ScoreSketch(200);
+        sketch.add(50, 100);
+        byte[] bytes = sketch.toBytes();
+        byte[] truncated = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+
+        assertThrows(IllegalArgumentException.class, () -> ScoreSketch.fromBytes(truncated));
+        assertThrows(IllegalArgumentException.class, () -> ScoreSketch.fromBytes(new byte[]{(byte) 0xC8}));
+    }
+
+    @Test
+    void interpolatesQuantilesInsideTheBin() {
+        ScoreSketch sketch = new ScoreSketch(10);
+        for (int i = 0; i < 10; i++) {
+            sketch.add(25, 100);
+        }
+
+        assertEquals(20.0, sketch.quantile(0.0), DELTA);
+        assertEquals(25.0, sketch.quantile(0.5), DELTA);
+        assertEquals(30.0, sketch.quantile(1.0), DELTA);
+        // q is clamped to [0, 1]
+        assertEquals(20.0, sketch.quantile(-1), DELTA);
+        assertEquals(30.0, sketch.quantile(2), DELTA);
+    }
+
+    @Test
+    void skipsEmptyBinsBetweenQuantiles() {
+        ScoreSketch sketch = new ScoreSketch(10);
+        for (int i = 0; i < 5; i++) {
+            sketch.add(0.5, 10);
+            sketch.add(10, 10);
+        }
+
+        assertEquals(10.0, sketch.quantile(0.5), DELTA);
+        assertEquals(92.0, sketch.quantile(0.6), DELTA);
+    }
+
+    @Test
+    void quantilesStayWithinOneBinOfExact() {
+        Random random = new Random(3);
+        ScoreSketch sketch = new ScoreSketch(100);
+        double[] scores = new double[10_001];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = random.nextDouble() * 100;
+            sketch.add(scores[i], 100);
+        }
+        Arrays.sort(scores);
+
+        for (double q : new double[]{0.1, 0.25, 0.5, 0.75, 0.9, 0.99}) {
+            assertEquals(scores[(int) (q * (scores.length - 1))], sketch.quantile(q), 1.0);
+        }
+    }
+
+    @Test
+    void bucketsHistogramByPercentage() {
+        ScoreSketch sketch = new ScoreSketch(100);
+        sketch.add(9.99, 100);
+        sketch.add(10, 100);
+        sketch.add(45, 50);
+        sketch.add(100, 100);
+        sketch.add(-5, 100);
+        // Without a maximum there is nothing to score against; counted at 0% so the total matches the submissions
+        sketch.add(5, 0);
+
+        assertArrayEquals(new long[]{3, 1, 0, 0, 0, 0, 0, 0, 0, 2}, sketch.histogram(10));
+        assertArrayEquals(new long[]{4, 2}, sketch.histogram(2));
+        assertEquals(6, sketch.count());
+    }
+
+    @Test
+    void rejectsBucketsThatDoNotDivideTheResolution() {
+        ScoreSketch sketch = new ScoreSketch(100);
+
+        assertThrows(IllegalArgumentException.class, () -> sketch.histogram(3));
+        assertThrows(IllegalArgumentException.class, () -> sketch.histogram(0));
+    }
+
+    @Test
+    void mergesSketchesOfTheSameResolution() {
+        ScoreSketch first = new ScoreSketch(10);
+        ScoreSketch second = new ScoreSketch(10);
+        first.add(15, 100);
+        second.add(15, 100);
+        second.add(95, 100);
+
+        first.merge(second);
+        assertEquals(3, first.count());
+        assertArrayEquals(new long[]{0, 2, 0, 0, 0, 0, 0, 0, 0, 1}, first.histogram(10));
+        assertThrows(IllegalArgumentException.class, () -> first.merge(new ScoreSketch(20)));
+    }
+}
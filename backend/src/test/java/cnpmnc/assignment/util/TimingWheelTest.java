@@ -0,0 +1,115 @@
+package cnpmnc.assignment.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+    private static final long TICK_MS = 10;
+
+    @Test
+    void deadlineInCurrentTickIsDueImmediately() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK_MS, 8, 1000);
+
+        assertNull(wheel.schedule("past", 990));
+        assertNull(wheel.schedule("now", 1000));
+        assertNotNull(wheel.schedule("next tick", 1001));
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    void firesOnTheFirstTickAtOrAfterTheDeadline() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK_MS, 8, 1000);
+        wheel.schedule("a", 1025);
+
+        assertEquals(List.of(), wheel.advance(1029));
+        assertEquals(List.of("a"), wheel.advance(1030));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cascadesTimersBeyondTheFirstLevel() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK_MS, 8, 0);
+        // The first level spans 80 ms and the second 640 ms
+        wheel.schedule("second level", 300);
+        wheel.schedule("third level", 2000);
+        assertEquals(2, wheel.size());
+
+        assertEquals(List.of(), wheel.advance(299));
+        assertEquals(List.of("second level"), wheel.advance(300));
+        assertEquals(List.of(), wheel.advance(1999));
+        assertEquals(List.of("third level"), wheel.advance(2000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void returnsExpiredPayloadsInTickOrder() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK_MS, 8, 0);
+        wheel.schedule("third", 500);
+        wheel.schedule("first", 20);
+        wheel.schedule("second", 150);
+
+        assertEquals(List.of("first", "second", "third"), wheel.advance(1000));
+    }
+
+    @Test
+    void cancelledTimersDoNotFire() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK_MS, 8, 0);
+        TimingWheel.Timeout<String> near = wheel.schedule("near", 30);
+        TimingWheel.Timeout<String> far = wheel.schedule("far", 700);
+        wheel.schedule("kept", 40);
+        near.cancel();
+        far.cancel();
+
+        assertEquals(List.of("kept"), wheel.advance(1000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void matchesDeadlinesRoundedUpToTheTick() {
+        Random random = new Random(7);
+        long now = 12_345;
+        TimingWheel<Integer> wheel = new TimingWheel<>(TICK_MS, 16, now);
+        Map<Integer, Long> deadlines = new HashMap<>();
+        List<Integer> fired = new ArrayList<>();
+
+        for (int id = 0; id < 5_000; id++) {
+            long deadline = now + 1 + random.nextInt(20_000);
+            deadlines.put(id, deadline);
+            assertNotNull(wheel.schedule(id, deadline));
+            if (random.nextInt(10) == 0) {
+                now += random.nextInt(50);
+                for (Integer expired : wheel.advance(now)) {
+                    assertFiredOnTime(deadlines.get(expired), now);
+                    fired.add(expired);
+                }
+            }
+        }
+        while (fired.size() < deadlines.size()) {
+            now += 1 + random.nextInt(30);
+            for (Integer expired : wheel.advance(now)) {
+                assertFiredOnTime(deadlines.get(expired), now);
+                fired.add(expired);
+            }
+            assertTrue(now < 100_000, "timers left in the wheel");
+        }
+        assertEquals(deadlines.size(), fired.stream().distinct().count());
+        assertEquals(0, wheel.size());
+    }
+
+    // Never early, and at most one tick plus one advance step late
+    private static void assertFiredOnTime(long deadline, long now) {
+        assertTrue(now >= deadline, "fired before its deadline");
+        assertTrue(now - deadline < TICK_MS + 50, "fired late");
+    }
+}